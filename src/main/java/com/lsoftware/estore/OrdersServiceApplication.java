@@ -1,17 +1,69 @@
 package com.lsoftware.estore;
 
+import java.util.concurrent.ExecutorService;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.DuplicateCommandHandlerResolver;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.distributed.AnnotationRoutingStrategy;
+import org.axonframework.commandhandling.distributed.RoutingStrategy;
+import org.axonframework.commandhandling.distributed.UnresolvedRoutingKeyPolicy;
+import org.axonframework.common.caching.Cache;
+import org.axonframework.common.caching.WeakReferenceCache;
+import org.axonframework.common.jpa.EntityManagerProvider;
+import org.axonframework.config.AxonConfiguration;
 import org.axonframework.config.Configuration;
 import org.axonframework.config.ConfigurationScopeAwareProvider;
+import org.axonframework.config.EventProcessingConfigurer;
 import org.axonframework.deadline.DeadlineManager;
-import org.axonframework.deadline.SimpleDeadlineManager;
+import org.axonframework.deadline.quartz.QuartzDeadlineManager;
+import org.axonframework.eventsourcing.EventCountSnapshotTriggerDefinition;
+import org.axonframework.eventsourcing.SnapshotTriggerDefinition;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.messaging.correlation.CorrelationDataProvider;
+import org.axonframework.messaging.interceptors.CorrelationDataInterceptor;
+import org.axonframework.messaging.correlation.MessageOriginProvider;
+import org.axonframework.messaging.correlation.SimpleCorrelationDataProvider;
+import org.axonframework.modelling.saga.repository.CachingSagaStore;
+import org.axonframework.modelling.saga.repository.SagaStore;
+import org.axonframework.modelling.saga.repository.jpa.JpaSagaStore;
+import org.axonframework.queryhandling.QueryBus;
+import org.axonframework.queryhandling.QueryMessage;
+import org.axonframework.queryhandling.QueryUpdateEmitter;
+import org.axonframework.serialization.Serializer;
 import org.axonframework.spring.messaging.unitofwork.SpringTransactionManager;
+import org.quartz.Scheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import com.lsoftware.estore.command.OrderAggregateLoadMonitor;
+import com.lsoftware.estore.command.PartitionedCommandBus;
+import com.lsoftware.estore.core.caching.LruCache;
+import com.lsoftware.estore.core.concurrent.VirtualThreadEventProcessors;
+import com.lsoftware.estore.core.concurrent.VirtualThreads;
+import com.lsoftware.estore.core.metrics.CorrelationMdcInterceptor;
+import com.lsoftware.estore.core.metrics.QueueWaitMonitor;
+import com.lsoftware.estore.core.serialization.OrderSerializers;
+import com.lsoftware.estore.query.OrderStatisticsEventsHandler;
+import com.lsoftware.estore.query.OrderSummaryUpdateEmitter;
+import com.lsoftware.estore.query.ProjectionLagMonitor;
+import com.lsoftware.estore.saga.DeferredDeleteSagaStore;
+import com.lsoftware.estore.saga.EndedSagaDeleter;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 
 @EnableDiscoveryClient
+@EnableScheduling
 @SpringBootApplication
 public class OrdersServiceApplication {
 
@@ -20,11 +72,176 @@ public class OrdersServiceApplication {
 	}
 	
 	@Bean
-	public DeadlineManager deadlineManager(Configuration configuration,
-			SpringTransactionManager transactionManager) {
-		return SimpleDeadlineManager.builder()
+	public DeadlineManager deadlineManager(Scheduler scheduler, Configuration configuration,
+			SpringTransactionManager transactionManager, Serializer serializer) {
+		return QuartzDeadlineManager.builder()
+				.scheduler(scheduler)
 				.scopeAwareProvider(new ConfigurationScopeAwareProvider(configuration))
 				.transactionManager(transactionManager)
+				.serializer(serializer)
+				.build();
+	}
+	
+	/**
+	 * Events (including OrderAggregate snapshots) are written as CBOR; XML written before, or by
+	 * the other services, is still read through XStream. Commands and queries keep the default
+	 * XStream message serializer because the products, payments and users services read them.
+	 */
+	@Bean
+	@Qualifier("eventSerializer")
+	public Serializer eventSerializer() {
+		return OrderSerializers.compact();
+	}
+	
+	/**
+	 * OrderSagas are looked up by orderId on every event. The association index and the sagas
+	 * themselves are kept in LRU caches in front of the JPA store (which has its own index on the
+	 * association columns). Ended sagas are deleted in batches by {@link EndedSagaDeleter}. A cache
+	 * size of 0 leaves the caches out, for nodes that share the saga segment with others.
+	 */
+	@Bean
+	public SagaStore<Object> sagaStore(@Qualifier("eventSerializer") Serializer eventSerializer,
+			EntityManagerProvider entityManagerProvider, EndedSagaDeleter endedSagaDeleter,
+			MeterRegistry meterRegistry, @Value("${orders.saga-cache.maximum-size:100000}") long sagaCacheSize) {
+		SagaStore<Object> jpaSagaStore = JpaSagaStore.builder()
+				.entityManagerProvider(entityManagerProvider)
+				.serializer(eventSerializer)
+				.build();
+		SagaStore<Object> deferredDeleteSagaStore = new DeferredDeleteSagaStore(jpaSagaStore, endedSagaDeleter);
+		if (sagaCacheSize == 0) {
+			return deferredDeleteSagaStore;
+		}
+		return CachingSagaStore.<Object>builder()
+				.delegateSagaStore(deferredDeleteSagaStore)
+				.sagaCache(new LruCache(meterRegistry, "orders.saga", sagaCacheSize))
+				.associationsCache(new LruCache(meterRegistry, "orders.saga.associations", sagaCacheSize))
+				.build();
+	}
+	
+	/**
+	 * Takes the place of Axon's SimpleQueryUpdateEmitter, so that OrderSaga publishing an order's
+	 * summary does not cost a filter call per open POST /orders request.
+	 */
+	@Bean
+	public OrderSummaryUpdateEmitter queryUpdateEmitter(Configuration configuration) {
+		return new OrderSummaryUpdateEmitter(configuration.messageMonitor(QueryUpdateEmitter.class, "queryUpdateEmitter"));
+	}
+	
+	@Autowired
+	public void configure(EventProcessingConfigurer config, ProjectionLagMonitor projectionLagMonitor) {
+		config.registerHandlerInterceptor("order-group", 
+				configuration -> projectionLagMonitor.eventAgeInterceptor("order-group"));
+		config.registerSequencingPolicy(OrderStatisticsEventsHandler.PROCESSING_GROUP, 
+				configuration -> OrderStatisticsEventsHandler.SEQUENCING_POLICY);
+	}
+	
+	/**
+	 * With several nodes connected, Axon Server hands each command to the node owning its routing key
+	 * on a consistent hash ring of the connected nodes (weighted by axon.axonserver.command-load-factor)
+	 * and moves keys when nodes join or leave. The key is the @TargetAggregateIdentifier, so all
+	 * commands of one order reach the node caching its OrderAggregate; a command without one is
+	 * refused rather than sent to a random node.
+	 */
+	@Bean
+	public RoutingStrategy routingStrategy() {
+		return new AnnotationRoutingStrategy(UnresolvedRoutingKeyPolicy.ERROR);
+	}
+	
+	/**
+	 * Replaces Axon's local command bus (the one handling the commands Axon Server routes to this
+	 * node) with a {@link PartitionedCommandBus}: commands of one order stay in sequence, different
+	 * orders are handled in parallel. The delegate is configured like Axon's default local segment.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	@Qualifier("localSegment")
+	@ConditionalOnProperty(name = "orders.commands.partitioned.enabled", havingValue = "true")
+	public CommandBus partitionedCommandBus(SpringTransactionManager transactionManager,
+			AxonConfiguration axonConfiguration, DuplicateCommandHandlerResolver duplicateCommandHandlerResolver,
+			RoutingStrategy routingStrategy, MeterRegistry meterRegistry,
+			@Value("${orders.commands.partitioned.partitions:0}") int partitions,
+			@Value("${orders.commands.partitioned.queue-capacity:1000}") int queueCapacity) {
+		SimpleCommandBus commandBus = SimpleCommandBus.builder()
+				.transactionManager(transactionManager)
+				.duplicateCommandHandlerResolver(duplicateCommandHandlerResolver)
+				.messageMonitor(axonConfiguration.messageMonitor(CommandBus.class, "commandBus"))
 				.build();
+		commandBus.registerHandlerInterceptor(
+				new CorrelationDataInterceptor<>(axonConfiguration.correlationDataProviders()));
+		int workers = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+		return new PartitionedCommandBus(commandBus, routingStrategy, workers, queueCapacity, meterRegistry);
+	}
+	
+	/**
+	 * Opt-in, Java 21 or later: every request is handled on its own virtual thread instead of one of
+	 * Tomcat's platform threads, so requests parked in sendAndWait, blockFirst or JDBC cost a small
+	 * heap object instead of a thread, and in-flight orders are bounded by the admission limiter
+	 * rather than by server.tomcat.threads.max.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	@ConditionalOnProperty(name = "orders.virtual-threads.enabled", havingValue = "true")
+	public ExecutorService virtualThreadsRequestExecutor() {
+		return VirtualThreads.newThreadPerTaskExecutor();
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name = "orders.virtual-threads.enabled", havingValue = "true")
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer(
+			@Qualifier("virtualThreadsRequestExecutor") ExecutorService executor) {
+		return protocolHandler -> protocolHandler.setExecutor(executor);
+	}
+	
+	/**
+	 * Behind the same flag, the tracking event processors run on virtual threads too; see
+	 * {@link VirtualThreadEventProcessors}. Static, as it post-processes Axon's own beans.
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "orders.virtual-threads.enabled", havingValue = "true")
+	public static VirtualThreadEventProcessors virtualThreadEventProcessors() {
+		return new VirtualThreadEventProcessors();
+	}
+	
+	@Bean(name = "orderSnapshotTriggerDefinition")
+	public SnapshotTriggerDefinition orderSnapshotTriggerDefinition(Snapshotter snapshotter,
+			@Value("${orders.aggregate.snapshot-threshold:20}") int snapshotThreshold) {
+		return new EventCountSnapshotTriggerDefinition(snapshotter, snapshotThreshold);
+	}
+	
+	@Bean(name = "orderCache")
+	public Cache orderCache() {
+		return new WeakReferenceCache();
+	}
+	
+	@Bean
+	public CorrelationDataProvider messageOriginProvider() {
+		return new MessageOriginProvider();
+	}
+	
+	@Bean
+	public CorrelationDataProvider orderIdCorrelationDataProvider() {
+		return new SimpleCorrelationDataProvider(CorrelationMdcInterceptor.ORDER_ID);
+	}
+	
+	@Autowired
+	public void registerMessageMonitors(CommandBus commandBus, QueryBus queryBus,
+			EventProcessingConfigurer eventProcessingConfigurer, MeterRegistry meterRegistry) {
+		QueueWaitMonitor<CommandMessage<?>> commandQueueWait = new QueueWaitMonitor<>(meterRegistry, "command");
+		commandBus.registerDispatchInterceptor(commandQueueWait);
+		commandBus.registerHandlerInterceptor(commandQueueWait);
+		commandBus.registerHandlerInterceptor(new CorrelationMdcInterceptor<>());
+		
+		QueueWaitMonitor<QueryMessage<?, ?>> queryQueueWait = new QueueWaitMonitor<>(meterRegistry, "query");
+		queryBus.registerDispatchInterceptor(queryQueueWait);
+		queryBus.registerHandlerInterceptor(queryQueueWait);
+		queryBus.registerHandlerInterceptor(new CorrelationMdcInterceptor<>());
+		
+		eventProcessingConfigurer.registerDefaultHandlerInterceptor(
+				(configuration, processorName) -> new QueueWaitMonitor<>(meterRegistry, processorName));
+		eventProcessingConfigurer.registerDefaultHandlerInterceptor(
+				(configuration, processorName) -> new CorrelationMdcInterceptor<>());
+	}
+	
+	@Autowired
+	public void registerAggregateLoadMonitor(CommandBus commandBus, OrderAggregateLoadMonitor orderAggregateLoadMonitor) {
+		commandBus.registerHandlerInterceptor(orderAggregateLoadMonitor);
 	}
 }
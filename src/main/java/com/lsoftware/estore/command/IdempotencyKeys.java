@@ -0,0 +1,183 @@
+package com.lsoftware.estore.command;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.lsoftware.estore.core.concurrent.GroupCommitter;
+import com.lsoftware.estore.core.data.IdempotencyKeyEntity;
+import com.lsoftware.estore.core.data.IdempotencyKeysRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Remembers which order each Idempotency-Key of {@code POST /orders} created, so a retried request
+ * is answered with the existing order instead of dispatching a second CreateOrderCommand.
+ * <p>
+ * Keys live in the idempotency_keys table. Recent ones are cached, and a bloom filter of all keys
+ * lets a new key (the common case) skip the table lookup and go straight to the insert; the primary
+ * key decides between two concurrent requests with the same key. The orderId is derived from the
+ * key as well, so even a request that gets past this layer cannot create a second OrderAggregate.
+ * <p>
+ * With {@code orders.group-commit.enabled} the inserts of concurrent requests are committed
+ * together by a {@link GroupCommitter}: each request waits up to the linger time, the database sees
+ * one transaction per batch instead of one per order.
+ */
+@Component
+public class IdempotencyKeys {
+
+	private final IdempotencyKeysRepository idempotencyKeysRepository;
+
+	private final Cache<String, String> orderIds;
+
+	private final BloomFilter<CharSequence> knownKeys;
+
+	private final Counter replays;
+
+	private final TransactionTemplate readOnlyTransaction;
+
+	// Null unless group commit is enabled
+	private final GroupCommitter<IdempotencyKeyEntity> groupCommitter;
+
+	public IdempotencyKeys(IdempotencyKeysRepository idempotencyKeysRepository, MeterRegistry meterRegistry,
+			PlatformTransactionManager transactionManager,
+			@Value("${orders.idempotency.cache-size:100000}") long cacheSize,
+			@Value("${orders.idempotency.cache-expire-after-write:1h}") Duration cacheExpireAfterWrite,
+			@Value("${orders.idempotency.expected-keys:1000000}") long expectedKeys,
+			@Value("${orders.group-commit.enabled:false}") boolean groupCommit,
+			@Value("${orders.group-commit.max-batch-size:100}") int groupCommitMaxBatchSize,
+			@Value("${orders.group-commit.linger:2ms}") Duration groupCommitLinger) {
+		this.idempotencyKeysRepository = idempotencyKeysRepository;
+		this.orderIds = GuavaCacheMetrics.monitor(meterRegistry, CacheBuilder.newBuilder()
+				.maximumSize(cacheSize)
+				.expireAfterWrite(cacheExpireAfterWrite)
+				.recordStats()
+				.<String, String>build(), "orders.idempotency");
+		this.knownKeys = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedKeys, 0.01);
+		this.replays = meterRegistry.counter("orders.idempotency.replays");
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		TransactionTemplate writeTransaction = new TransactionTemplate(transactionManager);
+		this.groupCommitter = !groupCommit ? null : new GroupCommitter<>("idempotency-keys", groupCommitMaxBatchSize,
+				groupCommitLinger, keys -> writeTransaction.executeWithoutResult(
+						status -> idempotencyKeysRepository.saveAllAndFlush(newEntities(keys))), meterRegistry);
+	}
+
+	@PreDestroy
+	void close() throws InterruptedException {
+		if (groupCommitter != null) {
+			groupCommitter.close();
+		}
+	}
+
+	// The bloom filter may only answer "new key" for keys that are really not in the table
+	@PostConstruct
+	void loadKeys() {
+		readOnlyTransaction.executeWithoutResult(status -> {
+			try (Stream<String> keys = idempotencyKeysRepository.streamAllKeys()) {
+				keys.forEach(knownKeys::put);
+			}
+		});
+	}
+
+	/**
+	 * The orderId to use for a new order submitted with this key; the same key always yields the
+	 * same orderId.
+	 */
+	public static String orderIdFor(String userId, String idempotencyKey) {
+		return UUID.nameUUIDFromBytes((userId + '/' + idempotencyKey).getBytes(StandardCharsets.UTF_8)).toString();
+	}
+
+	/**
+	 * Registers the key for {@code orderId}, or returns the orderId an earlier request with the same
+	 * key was registered for.
+	 */
+	public Optional<String> claim(String idempotencyKey, String orderId) {
+		String existing = orderIds.getIfPresent(idempotencyKey);
+		if (existing == null && knownKeys.mightContain(idempotencyKey)) {
+			existing = storedOrderId(idempotencyKey);
+		}
+		if (existing == null) {
+			try {
+				insert(new IdempotencyKeyEntity(idempotencyKey, orderId, Instant.now()));
+			} catch (DataIntegrityViolationException e) {
+				// A concurrent request with the same key was first
+				existing = storedOrderId(idempotencyKey);
+				if (existing == null) {
+					throw e;
+				}
+			}
+		}
+		knownKeys.put(idempotencyKey);
+		if (existing != null) {
+			orderIds.put(idempotencyKey, existing);
+			replays.increment();
+			return Optional.of(existing);
+		}
+		orderIds.put(idempotencyKey, orderId);
+		return Optional.empty();
+	}
+
+	/**
+	 * Drops a key whose CreateOrderCommand was rejected, so that a retry can dispatch it again. Only
+	 * for commands known not to have created the order; blocks on the delete.
+	 */
+	public void release(String idempotencyKey) {
+		orderIds.invalidate(idempotencyKey);
+		idempotencyKeysRepository.deleteById(idempotencyKey);
+	}
+
+	private void insert(IdempotencyKeyEntity idempotencyKey) {
+		if (groupCommitter == null) {
+			idempotencyKeysRepository.saveAndFlush(idempotencyKey);
+			return;
+		}
+		try {
+			groupCommitter.submit(idempotencyKey).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Fresh copies for every attempt: persisting marks an entity as not new even when the
+	 * transaction rolls back, and a retry with it would merge over an existing key instead of
+	 * failing on the primary key.
+	 */
+	private static List<IdempotencyKeyEntity> newEntities(List<IdempotencyKeyEntity> keys) {
+		return keys.stream()
+				.map(key -> new IdempotencyKeyEntity(key.getIdempotencyKey(), key.getOrderId(), key.getCreatedAt()))
+				.collect(Collectors.toList());
+	}
+
+	private String storedOrderId(String idempotencyKey) {
+		return idempotencyKeysRepository.findById(idempotencyKey)
+				.map(IdempotencyKeyEntity::getOrderId)
+				.orElse(null);
+	}
+
+}
@@ -0,0 +1,193 @@
+package com.lsoftware.estore.command;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounds the number of orders in progress, from dispatching the CreateOrderCommand until the saga
+ * publishes the final OrderSummary. The bound follows the latency of those orders (a gradient
+ * limiter): while the latest latency stays near its long term average the limit grows by about its
+ * square root, when it rises because the payment or product services slow down the limit shrinks in
+ * proportion, and an order that times out cuts it by a tenth. Orders beyond the limit are rejected
+ * right away instead of queueing threads and sagas.
+ * <p>
+ * Published as {@code orders.admission.limit}, {@code orders.admission.in-flight} and
+ * {@code orders.admission.rejected}.
+ */
+@Component
+public class OrderAdmissionLimiter {
+
+	// Latency may grow by this factor over the long term average before the limit shrinks
+	private static final double TOLERANCE = 1.5;
+
+	private static final double SMOOTHING = 0.2;
+
+	private static final double LONG_RTT_WINDOW = 600;
+
+	private final boolean enabled;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final Counter rejected;
+
+	// System.nanoTime, unless a test drives the latencies
+	private final LongSupplier nanoTime;
+
+	private volatile double limit;
+
+	// Long term average latency in nanoseconds, 0 until the first sample
+	private double longRttNanos;
+
+	@Autowired
+	public OrderAdmissionLimiter(MeterRegistry meterRegistry,
+			@Value("${orders.admission.enabled:true}") boolean enabled,
+			@Value("${orders.admission.initial-limit:100}") int initialLimit,
+			@Value("${orders.admission.min-limit:10}") int minLimit,
+			@Value("${orders.admission.max-limit:2000}") int maxLimit) {
+		this(meterRegistry, enabled, initialLimit, minLimit, maxLimit, System::nanoTime);
+	}
+
+	OrderAdmissionLimiter(MeterRegistry meterRegistry, boolean enabled, int initialLimit, int minLimit, int maxLimit,
+			LongSupplier nanoTime) {
+		this.nanoTime = nanoTime;
+		this.enabled = enabled;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = initialLimit;
+		this.rejected = Counter.builder("orders.admission.rejected")
+				.description("Orders rejected with 429 because the admission limit was reached")
+				.register(meterRegistry);
+		Gauge.builder("orders.admission.limit", this, OrderAdmissionLimiter::getLimit)
+				.description("Orders allowed in progress at once")
+				.register(meterRegistry);
+		Gauge.builder("orders.admission.in-flight", inFlight, AtomicInteger::get)
+				.description("Orders in progress")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * A permit for one more order, empty when the limit is reached. Every permit must be completed
+	 * with exactly one of its {@code on*} methods.
+	 */
+	public Optional<Permit> tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (enabled && current >= (int) limit) {
+				rejected.increment();
+				return Optional.empty();
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return Optional.of(new Permit(current + 1));
+			}
+		}
+	}
+
+	/**
+	 * {@link #tryAcquire()} that throws instead of returning empty.
+	 */
+	public Permit acquire() {
+		return tryAcquire().orElseThrow(() -> new OrderAdmissionRejectedException(getLimit(), retryAfter()));
+	}
+
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * About the time an order currently takes, by when some of the orders in progress have finished.
+	 */
+	public synchronized Duration retryAfter() {
+		return Duration.ofSeconds(Math.max(1, (long) Math.ceil(longRttNanos / 1_000_000_000d)));
+	}
+
+	private synchronized void onSample(long rttNanos, int inFlightAtStart) {
+		if (longRttNanos == 0) {
+			longRttNanos = rttNanos;
+		} else {
+			longRttNanos += (rttNanos - longRttNanos) / LONG_RTT_WINDOW;
+		}
+		// After a slow period the average is far above the current latency; let it catch up quickly
+		if (longRttNanos / rttNanos > 2) {
+			longRttNanos *= 0.95;
+		}
+
+		// The limit cannot be judged while there is not enough traffic to reach it
+		if (inFlightAtStart < limit / 2) {
+			return;
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / rttNanos));
+		double newLimit = limit * gradient + Math.sqrt(limit);
+		setLimit(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+	}
+
+	private synchronized void onDropped() {
+		setLimit(limit * 0.9);
+	}
+
+	private void setLimit(double newLimit) {
+		limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+	}
+
+	public class Permit {
+
+		private final long startNanos = nanoTime.getAsLong();
+
+		private final int inFlightAtStart;
+
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		private Permit(int inFlightAtStart) {
+			this.inFlightAtStart = inFlightAtStart;
+		}
+
+		/**
+		 * The order was approved or rejected; its latency is a sample for the limit.
+		 */
+		public void onSuccess() {
+			if (release()) {
+				onSample(Math.max(1, nanoTime.getAsLong() - startNanos), inFlightAtStart);
+			}
+		}
+
+		/**
+		 * The order did not complete in time, a sign of overload.
+		 */
+		public void onDropped() {
+			if (release()) {
+				OrderAdmissionLimiter.this.onDropped();
+			}
+		}
+
+		/**
+		 * The order failed for a reason that says nothing about load, e.g. a rejected command.
+		 */
+		public void onIgnore() {
+			release();
+		}
+
+		private boolean release() {
+			if (completed.compareAndSet(false, true)) {
+				inFlight.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package com.lsoftware.estore.command;
+
+import java.time.Duration;
+
+/**
+ * Thrown when {@link OrderAdmissionLimiter} has no room for another order; answered with a 429.
+ */
+public class OrderAdmissionRejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 3378104725630815724L;
+
+	private final Duration retryAfter;
+
+	public OrderAdmissionRejectedException(int limit, Duration retryAfter) {
+		super("Too many orders in progress (limit " + limit + "), retry later");
+		this.retryAfter = retryAfter;
+	}
+
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+
+}
@@ -6,7 +6,6 @@ import org.axonframework.eventsourcing.EventSourcingHandler;
 import org.axonframework.modelling.command.AggregateIdentifier;
 import org.axonframework.modelling.command.AggregateLifecycle;
 import org.axonframework.spring.stereotype.Aggregate;
-import org.springframework.beans.BeanUtils;
 
 import com.lsoftware.estore.command.commands.ApproveOrderCommand;
 import com.lsoftware.estore.command.commands.CreateOrderCommand;
@@ -14,9 +13,10 @@ import com.lsoftware.estore.command.commands.RejectOrderCommand;
 import com.lsoftware.estore.core.events.OrderApprovedEvent;
 import com.lsoftware.estore.core.events.OrderCreatedEvent;
 import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.mapping.OrderMapper;
 import com.lsoftware.estore.core.model.OrderStatus;
 
-@Aggregate
+@Aggregate(snapshotTriggerDefinition = "orderSnapshotTriggerDefinition", cache = "orderCache")
 public class OrderAggregate {
 
     @AggregateIdentifier
@@ -32,8 +32,7 @@ public class OrderAggregate {
 
     @CommandHandler
     public OrderAggregate(CreateOrderCommand createOrderCommand) {   
-        OrderCreatedEvent orderCreatedEvent = new OrderCreatedEvent();
-        BeanUtils.copyProperties(createOrderCommand, orderCreatedEvent);
+        OrderCreatedEvent orderCreatedEvent = OrderMapper.toOrderCreatedEvent(createOrderCommand);
         
         AggregateLifecycle.apply(orderCreatedEvent);
     }
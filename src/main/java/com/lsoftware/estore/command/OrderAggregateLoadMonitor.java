@@ -0,0 +1,115 @@
+package com.lsoftware.estore.command;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.axonframework.commandhandling.CommandHandler;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.eventsourcing.EventSourcingHandler;
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.Message;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.annotation.HandlerEnhancerDefinition;
+import org.axonframework.messaging.annotation.MessageHandlingMember;
+import org.axonframework.messaging.annotation.WrappedMessageHandlingMember;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.axonframework.modelling.command.AggregateLifecycle;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Measures how long it takes to load an {@link OrderAggregate} before a command reaches it and how
+ * many events were replayed for that load (zero on a cache hit, the events after the snapshot
+ * otherwise).
+ * <p>
+ * The command bus interceptor marks the start of handling; the wrapped
+ * {@link EventSourcingHandler}s count replayed events and the wrapped {@link CommandHandler}s
+ * record both once the aggregate is ready.
+ */
+@Component
+public class OrderAggregateLoadMonitor implements HandlerEnhancerDefinition, MessageHandlerInterceptor<CommandMessage<?>> {
+
+	private static final String LOAD_STARTED = OrderAggregateLoadMonitor.class.getName() + ".loadStarted";
+
+	private static final String EVENTS_REPLAYED = OrderAggregateLoadMonitor.class.getName() + ".eventsReplayed";
+
+	private final Timer loadTimer;
+
+	private final DistributionSummary eventsReplayedSummary;
+
+	public OrderAggregateLoadMonitor(MeterRegistry meterRegistry) {
+		this.loadTimer = Timer.builder("orders.aggregate.load")
+				.description("Time from command handling start until the OrderAggregate is loaded")
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		this.eventsReplayedSummary = DistributionSummary.builder("orders.aggregate.load.events")
+				.description("Events replayed to load an OrderAggregate")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public Object handle(UnitOfWork<? extends CommandMessage<?>> unitOfWork, InterceptorChain interceptorChain)
+			throws Exception {
+		unitOfWork.resources().put(LOAD_STARTED, System.nanoTime());
+		return interceptorChain.proceed();
+	}
+
+	@Override
+	public <T> MessageHandlingMember<T> wrapHandler(MessageHandlingMember<T> original) {
+		if (!OrderAggregate.class.equals(original.declaringClass())) {
+			return original;
+		}
+		if (original.annotationAttributes(EventSourcingHandler.class).isPresent()) {
+			return new ReplayCountingHandler<>(original);
+		}
+		if (original.annotationAttributes(CommandHandler.class).isPresent()
+				&& !original.unwrap(Constructor.class).isPresent()) {
+			return new LoadRecordingHandler<>(original);
+		}
+		return original;
+	}
+
+	private class ReplayCountingHandler<T> extends WrappedMessageHandlingMember<T> {
+
+		ReplayCountingHandler(MessageHandlingMember<T> delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public Object handle(Message<?> message, T target) throws Exception {
+			if (!AggregateLifecycle.isLive() && CurrentUnitOfWork.isStarted()) {
+				CurrentUnitOfWork.get()
+						.getOrComputeResource(EVENTS_REPLAYED, key -> new AtomicInteger())
+						.incrementAndGet();
+			}
+			return super.handle(message, target);
+		}
+	}
+
+	private class LoadRecordingHandler<T> extends WrappedMessageHandlingMember<T> {
+
+		LoadRecordingHandler(MessageHandlingMember<T> delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public Object handle(Message<?> message, T target) throws Exception {
+			if (CurrentUnitOfWork.isStarted()) {
+				UnitOfWork<?> unitOfWork = CurrentUnitOfWork.get();
+				Long loadStarted = unitOfWork.getResource(LOAD_STARTED);
+				if (loadStarted != null) {
+					loadTimer.record(System.nanoTime() - loadStarted, TimeUnit.NANOSECONDS);
+					AtomicInteger eventsReplayed = unitOfWork.getResource(EVENTS_REPLAYED);
+					eventsReplayedSummary.record(eventsReplayed == null ? 0 : eventsReplayed.get());
+				}
+			}
+			return super.handle(message, target);
+		}
+	}
+
+}
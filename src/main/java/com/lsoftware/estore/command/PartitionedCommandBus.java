@@ -0,0 +1,130 @@
+package com.lsoftware.estore.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.GenericCommandResultMessage;
+import org.axonframework.commandhandling.distributed.RoutingStrategy;
+import org.axonframework.common.AxonThreadFactory;
+import org.axonframework.common.Registration;
+import org.axonframework.messaging.MessageDispatchInterceptor;
+import org.axonframework.messaging.MessageHandler;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Local command bus that hands every command to one of {@code partitions} single threaded workers,
+ * chosen by the command's routing key (the orderId). Commands of one order are handled one after
+ * the other in dispatch order, commands of different orders in parallel on all workers, and the
+ * dispatching thread (an Axon Server command thread or a saga) is free as soon as the command is
+ * queued. Handling itself, with its unit of work and transaction, is left to the delegate.
+ * <p>
+ * Each partition queues at most {@code queueCapacity} commands. A command arriving at a full
+ * partition is not queued: its callback completes with a {@link RejectedExecutionException}, so a
+ * hot order or a slow handler pushes back on the dispatcher instead of filling the heap.
+ * <p>
+ * Published per partition as {@code orders.commands.queue.depth} and
+ * {@code orders.commands.partition.latency} (queue wait plus handling).
+ */
+public class PartitionedCommandBus implements CommandBus {
+
+	private final CommandBus delegate;
+
+	private final RoutingStrategy routingStrategy;
+
+	private final List<ExecutorService> workers;
+
+	private final List<Timer> latencies;
+
+	private final int queueCapacity;
+
+	public PartitionedCommandBus(CommandBus delegate, RoutingStrategy routingStrategy, int partitions,
+			int queueCapacity, MeterRegistry meterRegistry) {
+		this.delegate = delegate;
+		this.routingStrategy = routingStrategy;
+		this.workers = new ArrayList<>(partitions);
+		this.latencies = new ArrayList<>(partitions);
+		this.queueCapacity = queueCapacity;
+		AxonThreadFactory threadFactory = new AxonThreadFactory("command-partition");
+		for (int partition = 0; partition < partitions; partition++) {
+			ThreadPoolExecutor worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>(queueCapacity), threadFactory);
+			String tag = String.valueOf(partition);
+			Gauge.builder("orders.commands.queue.depth", worker, executor -> executor.getQueue().size())
+					.description("Commands waiting for their partition's worker")
+					.tag("partition", tag)
+					.register(meterRegistry);
+			latencies.add(Timer.builder("orders.commands.partition.latency")
+					.description("Time from dispatch until a partition's worker has handled the command")
+					.tag("partition", tag)
+					.publishPercentileHistogram()
+					.register(meterRegistry));
+			workers.add(worker);
+		}
+	}
+
+	@Override
+	public <C, R> void dispatch(CommandMessage<C> command, CommandCallback<? super C, ? super R> callback) {
+		int partition;
+		try {
+			partition = partition(routingStrategy.getRoutingKey(command));
+		} catch (RuntimeException e) {
+			callback.onResult(command, GenericCommandResultMessage.asCommandResultMessage(e));
+			return;
+		}
+		long dispatchedAt = System.nanoTime();
+		CommandCallback<C, R> timedCallback = (message, result) -> {
+			latencies.get(partition).record(System.nanoTime() - dispatchedAt, TimeUnit.NANOSECONDS);
+			callback.onResult(message, result);
+		};
+		ExecutorService worker = workers.get(partition);
+		try {
+			worker.execute(() -> delegate.dispatch(command, timedCallback));
+		} catch (RejectedExecutionException e) {
+			RejectedExecutionException rejected = worker.isShutdown() ? e : new RejectedExecutionException(
+					"Command partition " + partition + " already has " + queueCapacity + " commands queued");
+			callback.onResult(command, GenericCommandResultMessage.asCommandResultMessage(rejected));
+		}
+	}
+
+	@Override
+	public Registration subscribe(String commandName, MessageHandler<? super CommandMessage<?>> handler) {
+		return delegate.subscribe(commandName, handler);
+	}
+
+	@Override
+	public Registration registerHandlerInterceptor(MessageHandlerInterceptor<? super CommandMessage<?>> handlerInterceptor) {
+		return delegate.registerHandlerInterceptor(handlerInterceptor);
+	}
+
+	@Override
+	public Registration registerDispatchInterceptor(MessageDispatchInterceptor<? super CommandMessage<?>> dispatchInterceptor) {
+		return delegate.registerDispatchInterceptor(dispatchInterceptor);
+	}
+
+	/**
+	 * Lets the workers finish the commands already queued; called by Spring when the context closes.
+	 */
+	public void shutdown() throws InterruptedException {
+		workers.forEach(ExecutorService::shutdown);
+		for (ExecutorService worker : workers) {
+			worker.awaitTermination(30, TimeUnit.SECONDS);
+		}
+	}
+
+	private int partition(String routingKey) {
+		return Math.floorMod(routingKey.hashCode(), workers.size());
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.lsoftware.estore.command.rest;
+
+import java.time.Duration;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.lsoftware.estore.core.model.OrderStatus;
+import com.lsoftware.estore.core.model.OrderSummary;
+
+import lombok.Value;
+
+/**
+ * One line of the POST /orders/bulk response, for the order at {@code index} in the request.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkOrderResult {
+
+    public enum Outcome {
+        /** The order exists; orderStatus is where it stood when the line was written. */
+        ACCEPTED,
+        /** No order was created, the item can be sent again (after retryAfterSeconds when set). */
+        NOT_ACCEPTED,
+        /** The command failed in a way that may or may not have created the order; look up orderId. */
+        UNKNOWN
+    }
+
+    private final int index;
+    private final Outcome outcome;
+    private final String orderId;
+    private final OrderStatus orderStatus;
+    private final String message;
+    private final Long retryAfterSeconds;
+
+    public static BulkOrderResult accepted(int index, OrderSummary orderSummary) {
+        return new BulkOrderResult(index, Outcome.ACCEPTED, orderSummary.getOrderId(), orderSummary.getOrderStatus(),
+                orderSummary.getMessage(), null);
+    }
+
+    public static BulkOrderResult pending(int index, String orderId) {
+        return new BulkOrderResult(index, Outcome.ACCEPTED, orderId, OrderStatus.CREATED,
+                "Order is still being processed", null);
+    }
+
+    public static BulkOrderResult notAccepted(int index, String message, Duration retryAfter) {
+        return new BulkOrderResult(index, Outcome.NOT_ACCEPTED, null, null, message,
+                retryAfter == null ? null : retryAfter.getSeconds());
+    }
+
+    public static BulkOrderResult unknown(int index, String orderId, String message) {
+        return new BulkOrderResult(index, Outcome.UNKNOWN, orderId, null, message, null);
+    }
+
+}
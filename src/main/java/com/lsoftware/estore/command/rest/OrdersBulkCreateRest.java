@@ -0,0 +1,17 @@
+package com.lsoftware.estore.command.rest;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class OrdersBulkCreateRest {
+
+    @NotEmpty(message = "At least one order is required")
+    @Size(max = 1000, message = "No more than 1000 orders can be created at once")
+    private List<@Valid OrderCreateRest> orders;
+
+}
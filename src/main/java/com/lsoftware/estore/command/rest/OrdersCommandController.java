@@ -1,63 +1,425 @@
 package com.lsoftware.estore.command.rest;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
 import javax.validation.Valid;
+import org.axonframework.commandhandling.CommandExecutionException;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.commandhandling.NoHandlerForCommandException;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.axonframework.messaging.responsetypes.ResponseTypes;
+import org.axonframework.modelling.command.ConcurrencyException;
 import org.axonframework.queryhandling.QueryGateway;
 import org.axonframework.queryhandling.SubscriptionQueryResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.lsoftware.estore.command.IdempotencyKeys;
+import com.lsoftware.estore.command.OrderAdmissionLimiter;
+import com.lsoftware.estore.command.OrderAdmissionRejectedException;
 import com.lsoftware.estore.command.commands.CreateOrderCommand;
+import com.lsoftware.estore.core.metrics.CorrelationMdcInterceptor;
+import com.lsoftware.estore.core.metrics.OrderMetrics;
 import com.lsoftware.estore.core.model.OrderStatus;
 import com.lsoftware.estore.core.model.OrderSummary;
 import com.lsoftware.estore.query.FindOrderQuery;
 
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
 @RestController
 @RequestMapping("/orders")
 public class OrdersCommandController {
 
+    /**
+     * Optional request header of POST /orders and /orders/async. Requests repeating a key get the
+     * order created by the first one instead of a new order.
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private static final int IDEMPOTENCY_KEY_MAX_LENGTH = 255;
+
+    private static final String USER_ID = "27b95829-4f3f-4ddf-8983-151ba010e35b";
+
     private final CommandGateway commandGateway;
-    
+
     private final QueryGateway queryGateway;
 
+    private final Duration orderSummaryTimeout;
+
+    private final int bulkMaxInFlight;
+
+    private final Duration bulkMaxDuration;
+
+    private final OrderMetrics orderMetrics;
+
+    private final IdempotencyKeys idempotencyKeys;
+
+    private final OrderAdmissionLimiter orderAdmissionLimiter;
+
     @Autowired
-    public OrdersCommandController(CommandGateway commandGateway, QueryGateway queryGateway) {
+    public OrdersCommandController(CommandGateway commandGateway, QueryGateway queryGateway,
+            @Value("${orders.create.summary-timeout:30s}") Duration orderSummaryTimeout,
+            @Value("${orders.bulk.max-in-flight:32}") int bulkMaxInFlight,
+            @Value("${orders.bulk.max-duration:10m}") Duration bulkMaxDuration,
+            @Value("${spring.mvc.async.request-timeout:30s}") Duration asyncRequestTimeout,
+            OrderMetrics orderMetrics, IdempotencyKeys idempotencyKeys,
+            OrderAdmissionLimiter orderAdmissionLimiter) {
+        // Past the async timeout the servlet container cuts the stream off without the remaining lines
+        if (bulkMaxDuration.compareTo(asyncRequestTimeout) >= 0) {
+            throw new IllegalArgumentException("orders.bulk.max-duration (" + bulkMaxDuration
+                    + ") must be shorter than spring.mvc.async.request-timeout (" + asyncRequestTimeout + ")");
+        }
         this.commandGateway = commandGateway;
         this.queryGateway = queryGateway;
+        this.orderSummaryTimeout = orderSummaryTimeout;
+        this.bulkMaxInFlight = bulkMaxInFlight;
+        this.bulkMaxDuration = bulkMaxDuration;
+        this.orderMetrics = orderMetrics;
+        this.idempotencyKeys = idempotencyKeys;
+        this.orderAdmissionLimiter = orderAdmissionLimiter;
     }
 
     @PostMapping
-    public OrderSummary createOrder(@Valid @RequestBody OrderCreateRest order) {
-        
-        String userId = "27b95829-4f3f-4ddf-8983-151ba010e35b";
-        String orderId = UUID.randomUUID().toString();
+    public OrderSummary createOrder(@Valid @RequestBody OrderCreateRest order,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+
+        CreateOrderCommand createOrderCommand = toCreateOrderCommand(order, idempotencyKey);
+        Optional<String> existingOrderId = claimIdempotencyKey(idempotencyKey, createOrderCommand.getOrderId());
+        if (existingOrderId.isPresent()) {
+            return findOrderSummary(existingOrderId.get()).join();
+        }
+        OrderAdmissionLimiter.Permit permit = admit(idempotencyKey);
+
+        SubscriptionQueryResult<OrderSummary, OrderSummary> queryResult =
+        		subscribeToOrderSummary(createOrderCommand.getOrderId());
+
+        try {
+        	Timer.Sample sendSample = orderMetrics.startTimer();
+        	try {
+        		commandGateway.sendAndWait(toCommandMessage(createOrderCommand));
+        		orderMetrics.recordCreateOrder(sendSample, "send", OrderMetrics.SUCCESS);
+        	} catch (RuntimeException e) {
+        		orderMetrics.recordCreateOrder(sendSample, "send", OrderMetrics.FAILURE);
+        		permit.onIgnore();
+        		if (idempotencyKey != null && isOrderAlreadyCreated(e)) {
+        			return findOrderSummary(createOrderCommand.getOrderId()).join();
+        		}
+        		if (isRejected(e)) {
+        			releaseIdempotencyKey(idempotencyKey);
+        		}
+        		throw e;
+        	}
+
+        	Timer.Sample awaitSample = orderMetrics.startTimer();
+        	OrderSummary orderSummary;
+        	try {
+        		orderSummary = queryResult.updates().next().timeout(orderSummaryTimeout).block();
+        	} catch (RuntimeException e) {
+        		// Only a timeout says something about the load; other failures leave the limit alone
+        		if (Exceptions.unwrap(e) instanceof TimeoutException) {
+        			permit.onDropped();
+        			orderMetrics.recordCreateOrder(awaitSample, "await-summary", summaryOutcome(null));
+        		} else {
+        			permit.onIgnore();
+        		}
+        		throw e;
+        	}
+        	complete(permit, orderSummary);
+        	orderMetrics.recordCreateOrder(awaitSample, "await-summary", summaryOutcome(orderSummary));
+        	return orderSummary;
+		} finally {
+			queryResult.close();
+		}
 
-        CreateOrderCommand createOrderCommand = CreateOrderCommand.builder()
+    }
+
+    /**
+     * Non-blocking variant of {@link #createOrder(OrderCreateRest, String)}. The servlet thread is released
+     * as soon as the command is dispatched; the response is written once the saga publishes the
+     * final {@link OrderSummary}. If that does not happen within the configured timeout the client
+     * gets a 202 with a Location header pointing at the order status resource.
+     */
+    @PostMapping("/async")
+    public CompletableFuture<ResponseEntity<OrderSummary>> createOrderAsync(@Valid @RequestBody OrderCreateRest order,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+
+        CreateOrderCommand createOrderCommand = toCreateOrderCommand(order, idempotencyKey);
+        Optional<String> existingOrderId = claimIdempotencyKey(idempotencyKey, createOrderCommand.getOrderId());
+        if (existingOrderId.isPresent()) {
+            return findOrderSummary(existingOrderId.get()).thenApply(ResponseEntity::ok);
+        }
+        OrderAdmissionLimiter.Permit permit = admit(idempotencyKey);
+        URI orderStatusUri = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/orders/{orderId}")
+                .buildAndExpand(createOrderCommand.getOrderId())
+                .toUri();
+
+        return withPermit(dispatchAndAwaitSummary(createOrderCommand), permit)
+                .onErrorResume(exception -> recoverCreateOrder(exception, idempotencyKey,
+                        createOrderCommand.getOrderId()))
+                .map(orderSummary -> ResponseEntity.ok(orderSummary))
+                .defaultIfEmpty(ResponseEntity.accepted().location(orderStatusUri).build())
+                .toFuture();
+    }
+
+    /**
+     * Creates every order of the request, keeping at most {@code orders.bulk.max-in-flight} of them
+     * in progress at a time. Each result is streamed back as a JSON line as soon as it is known, so
+     * lines arrive in completion order and carry the index of their order in the request. Orders
+     * still running when the summary timeout elapses are reported as ACCEPTED in status CREATED.
+     * Orders that were not admitted, or whose command was rejected, are NOT_ACCEPTED: no order
+     * exists for them. After {@code orders.bulk.max-duration} the orders not reported yet are
+     * written out at once, dispatched ones as CREATED and the others as NOT_ACCEPTED, so the
+     * response ends before the servlet async timeout.
+     */
+    @PostMapping(path = "/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BulkOrderResult> createOrders(@Valid @RequestBody OrdersBulkCreateRest bulk) {
+        List<OrderCreateRest> orders = bulk.getOrders();
+        // By index in the request: orders whose command is on its way, and orders it was sent for
+        Map<Integer, String> dispatched = new ConcurrentHashMap<>();
+        Set<Integer> sent = ConcurrentHashMap.newKeySet();
+        Set<Integer> reported = ConcurrentHashMap.newKeySet();
+        return Flux.range(0, orders.size())
+                .flatMap(index -> createBulkOrder(index, orders.get(index), dispatched, sent), bulkMaxInFlight)
+                .take(bulkMaxDuration)
+                .doOnNext(result -> reported.add(result.getIndex()))
+                .concatWith(Flux.defer(() -> Flux.range(0, orders.size())
+                        .filter(index -> !reported.contains(index))
+                        .map(index -> unfinishedBulkOrder(index, dispatched.get(index), sent.contains(index)))));
+    }
+
+    private Mono<BulkOrderResult> createBulkOrder(int index, OrderCreateRest order, Map<Integer, String> dispatched,
+            Set<Integer> sent) {
+        return Mono.defer(() -> {
+            CreateOrderCommand createOrderCommand = toCreateOrderCommand(order, null);
+            String orderId = createOrderCommand.getOrderId();
+            OrderAdmissionLimiter.Permit permit;
+            try {
+                permit = orderAdmissionLimiter.acquire();
+            } catch (OrderAdmissionRejectedException e) {
+                return Mono.just(BulkOrderResult.notAccepted(index, e.getMessage(), e.getRetryAfter()));
+            }
+            dispatched.put(index, orderId);
+            return withPermit(dispatchAndAwaitSummary(createOrderCommand, () -> sent.add(index)), permit)
+                    .map(orderSummary -> BulkOrderResult.accepted(index, orderSummary))
+                    .defaultIfEmpty(BulkOrderResult.pending(index, orderId))
+                    .onErrorResume(exception -> Mono.just(isRejected(exception)
+                            ? BulkOrderResult.notAccepted(index, unwrap(exception).getMessage(), null)
+                            : BulkOrderResult.unknown(index, orderId, unwrap(exception).getMessage())));
+        });
+    }
+
+    private BulkOrderResult unfinishedBulkOrder(int index, String orderId, boolean sent) {
+        if (orderId == null) {
+            return BulkOrderResult.notAccepted(index, "Not dispatched within " + bulkMaxDuration, null);
+        }
+        return sent ? BulkOrderResult.pending(index, orderId)
+                : BulkOrderResult.unknown(index, orderId, "Command still in flight after " + bulkMaxDuration);
+    }
+
+    /**
+     * Dispatches the command and completes with the first {@link OrderSummary} update for the order,
+     * or completes empty when no update arrives within the configured timeout.
+     */
+    private Mono<OrderSummary> dispatchAndAwaitSummary(CreateOrderCommand createOrderCommand) {
+        return dispatchAndAwaitSummary(createOrderCommand, () -> { });
+    }
+
+    private Mono<OrderSummary> dispatchAndAwaitSummary(CreateOrderCommand createOrderCommand, Runnable onSent) {
+        return Mono.using(
+                () -> subscribeToOrderSummary(createOrderCommand.getOrderId()),
+                queryResult -> Mono.fromFuture(sendCreateOrder(createOrderCommand))
+                        .then(Mono.fromRunnable(onSent))
+                        .then(Mono.defer(() -> awaitSummary(queryResult))),
+                SubscriptionQueryResult::close);
+    }
+
+    private CompletableFuture<Object> sendCreateOrder(CreateOrderCommand createOrderCommand) {
+        Timer.Sample sample = orderMetrics.startTimer();
+        return commandGateway.send(toCommandMessage(createOrderCommand))
+                .whenComplete((result, exception) -> orderMetrics.recordCreateOrder(sample, "send",
+                        exception == null ? OrderMetrics.SUCCESS : OrderMetrics.FAILURE));
+    }
+
+    private Mono<OrderSummary> awaitSummary(SubscriptionQueryResult<OrderSummary, OrderSummary> queryResult) {
+        Timer.Sample sample = orderMetrics.startTimer();
+        return queryResult.updates().next()
+                .timeout(orderSummaryTimeout, Mono.empty())
+                .doOnSuccess(orderSummary -> orderMetrics.recordCreateOrder(sample, "await-summary",
+                        summaryOutcome(orderSummary)));
+    }
+
+    /**
+     * A retried request whose order an earlier attempt created after all is answered like a replay.
+     * The key is freed only when the command was rejected; the delete runs on a worker thread, not
+     * on the Axon thread that completed the command.
+     */
+    private Mono<OrderSummary> recoverCreateOrder(Throwable exception, String idempotencyKey, String orderId) {
+        if (idempotencyKey == null) {
+            return Mono.error(exception);
+        }
+        if (isOrderAlreadyCreated(exception)) {
+            return Mono.defer(() -> Mono.fromFuture(findOrderSummary(orderId)));
+        }
+        if (isRejected(exception)) {
+            return Mono.fromRunnable(() -> idempotencyKeys.release(idempotencyKey))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then(Mono.error(exception));
+        }
+        return Mono.error(exception);
+    }
+
+    /**
+     * Only a command its handler rejected, or that no handler took, is known not to have created the
+     * order. After a timeout or a lost connection the order may exist, and the key has to stay with it.
+     */
+    private static boolean isRejected(Throwable exception) {
+        Throwable failure = unwrap(exception);
+        return (failure instanceof CommandExecutionException && !isOrderAlreadyCreated(failure))
+                || failure instanceof NoHandlerForCommandException;
+    }
+
+    // The orderId is derived from the key, so a second CreateOrderCommand for it fails on the event stream
+    private static boolean isOrderAlreadyCreated(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrencyException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Throwable unwrap(Throwable exception) {
+        Throwable failure = exception;
+        while (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
+    /**
+     * A permit of the {@link OrderAdmissionLimiter}; when there is none the idempotency key is freed
+     * again, since no order was created for it.
+     */
+    private OrderAdmissionLimiter.Permit admit(String idempotencyKey) {
+        try {
+            return orderAdmissionLimiter.acquire();
+        } catch (OrderAdmissionRejectedException e) {
+            releaseIdempotencyKey(idempotencyKey);
+            throw e;
+        }
+    }
+
+    private static Mono<OrderSummary> withPermit(Mono<OrderSummary> orderSummary, OrderAdmissionLimiter.Permit permit) {
+        return orderSummary
+                .doOnSuccess(summary -> complete(permit, summary))
+                .doOnError(exception -> permit.onIgnore())
+                .doOnCancel(permit::onIgnore);
+    }
+
+    // No summary means the saga did not finish within the timeout
+    private static void complete(OrderAdmissionLimiter.Permit permit, OrderSummary orderSummary) {
+        if (orderSummary == null) {
+            permit.onDropped();
+        } else {
+            permit.onSuccess();
+        }
+    }
+
+    @ExceptionHandler(OrderAdmissionRejectedException.class)
+    public ResponseEntity<Map<String, String>> handleAdmissionRejected(OrderAdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().getSeconds()))
+                .body(Collections.singletonMap("message", e.getMessage()));
+    }
+
+    /**
+     * Empty when the request is new (or carries no key) and its order has to be created, otherwise
+     * the order the key was first used for.
+     */
+    private Optional<String> claimIdempotencyKey(String idempotencyKey, String orderId) {
+        return idempotencyKey == null ? Optional.empty() : idempotencyKeys.claim(idempotencyKey, orderId);
+    }
+
+    private void releaseIdempotencyKey(String idempotencyKey) {
+        if (idempotencyKey != null) {
+            idempotencyKeys.release(idempotencyKey);
+        }
+    }
+
+    private CompletableFuture<OrderSummary> findOrderSummary(String orderId) {
+        return queryGateway.query(new FindOrderQuery(orderId), ResponseTypes.instanceOf(OrderSummary.class))
+                .thenApply(orderSummary -> orderSummary != null ? orderSummary
+                        : new OrderSummary(orderId, OrderStatus.CREATED, "Order is still being processed"));
+    }
+
+    private static String summaryOutcome(OrderSummary orderSummary) {
+        return orderSummary == null ? "timeout" : orderSummary.getOrderStatus().name();
+    }
+
+    /**
+     * The orderId travels as metadata from here on: the orderId correlation data provider copies it
+     * to every event and command that follows, and it ends up in the logging MDC of each handler.
+     */
+    private static CommandMessage<CreateOrderCommand> toCommandMessage(CreateOrderCommand createOrderCommand) {
+        return GenericCommandMessage.<CreateOrderCommand>asCommandMessage(createOrderCommand)
+                .andMetaData(Collections.singletonMap(CorrelationMdcInterceptor.ORDER_ID,
+                        createOrderCommand.getOrderId()));
+    }
+
+    private SubscriptionQueryResult<OrderSummary, OrderSummary> subscribeToOrderSummary(String orderId) {
+        return queryGateway.subscriptionQuery(new FindOrderQuery(orderId),
+        		ResponseTypes.instanceOf(OrderSummary.class),
+        		ResponseTypes.instanceOf(OrderSummary.class));
+    }
+
+    private CreateOrderCommand toCreateOrderCommand(OrderCreateRest order, String idempotencyKey) {
+        String orderId;
+        if (idempotencyKey == null) {
+            orderId = UUID.randomUUID().toString();
+        } else if (idempotencyKey.isEmpty() || idempotencyKey.length() > IDEMPOTENCY_KEY_MAX_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    IDEMPOTENCY_KEY + " must have 1 to " + IDEMPOTENCY_KEY_MAX_LENGTH + " characters");
+        } else {
+            orderId = IdempotencyKeys.orderIdFor(USER_ID, idempotencyKey);
+        }
+
+        return CreateOrderCommand.builder()
                 .addressId(order.getAddressId())
                 .productId(order.getProductId())
-                .userId(userId)
+                .userId(USER_ID)
                 .quantity(order.getQuantity())
                 .orderId(orderId)
                 .orderStatus(OrderStatus.CREATED)
                 .build();
-        
-        SubscriptionQueryResult<OrderSummary, OrderSummary> queryResult = 
-        		queryGateway.subscriptionQuery(new FindOrderQuery(orderId), 
-        		ResponseTypes.instanceOf(OrderSummary.class), 
-        		ResponseTypes.instanceOf(OrderSummary.class));
-        
-        try {
-        	commandGateway.sendAndWait(createOrderCommand);
-        	return queryResult.updates().blockFirst();
-		} finally {
-			queryResult.close();
-		}
-
     }
 
 }
@@ -0,0 +1,88 @@
+package com.lsoftware.estore.core.caching;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.axonframework.common.Registration;
+import org.axonframework.common.caching.Cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Size-bounded Axon {@link Cache} on top of a Guava cache, which evicts the least recently used
+ * entries first. Hits, misses and evictions are published as the {@code cache.*} metrics of the
+ * given cache name.
+ */
+public class LruCache implements Cache {
+
+	private final com.google.common.cache.Cache<Object, Object> cache;
+
+	private final List<EntryListener> entryListeners = new CopyOnWriteArrayList<>();
+
+	public LruCache(MeterRegistry meterRegistry, String name, long maximumSize) {
+		this.cache = GuavaCacheMetrics.monitor(meterRegistry, CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.recordStats()
+				.removalListener(this::onRemoval)
+				.build(), name);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <K, V> V get(K key) {
+		Object value = cache.getIfPresent(key);
+		if (value != null) {
+			entryListeners.forEach(listener -> listener.onEntryRead(key, value));
+		}
+		return (V) value;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		Object previous = cache.asMap().put(key, value);
+		if (previous == null) {
+			entryListeners.forEach(listener -> listener.onEntryCreated(key, value));
+		} else {
+			entryListeners.forEach(listener -> listener.onEntryUpdated(key, value));
+		}
+	}
+
+	@Override
+	public boolean putIfAbsent(Object key, Object value) {
+		if (cache.asMap().putIfAbsent(key, value) != null) {
+			return false;
+		}
+		entryListeners.forEach(listener -> listener.onEntryCreated(key, value));
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object key) {
+		return cache.asMap().remove(key) != null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return cache.asMap().containsKey(key);
+	}
+
+	@Override
+	public Registration registerCacheEntryListener(EntryListener cacheEntryListener) {
+		entryListeners.add(cacheEntryListener);
+		return () -> entryListeners.remove(cacheEntryListener);
+	}
+
+	private void onRemoval(RemovalNotification<Object, Object> notification) {
+		if (notification.getCause() == RemovalCause.EXPLICIT) {
+			entryListeners.forEach(listener -> listener.onEntryRemoved(notification.getKey()));
+		} else if (notification.wasEvicted()) {
+			entryListeners.forEach(listener -> listener.onEntryExpired(notification.getKey()));
+		}
+	}
+
+}
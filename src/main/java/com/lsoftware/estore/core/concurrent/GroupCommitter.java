@@ -0,0 +1,168 @@
+package com.lsoftware.estore.core.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Collects writes submitted by many threads and hands them to the writer in batches, so that one
+ * transaction (and one commit) covers up to {@code maxBatchSize} of them. A batch is written once
+ * it is full, or {@code linger} after its first write arrived; with a linger of zero it holds
+ * whatever queued up while the previous batch was being written. If a batch fails, its writes are
+ * retried one by one so that one bad write does not fail the others.
+ * <p>
+ * Published as {@code orders.group-commit.batch.size} and {@code orders.group-commit.write}, tagged
+ * with the committer's name.
+ */
+public class GroupCommitter<T> implements AutoCloseable {
+
+	private final int maxBatchSize;
+
+	private final long lingerNanos;
+
+	private final Consumer<List<T>> writer;
+
+	private final BlockingQueue<PendingWrite<T>> queue = new LinkedBlockingQueue<>();
+
+	private final Thread writerThread;
+
+	private final DistributionSummary batchSize;
+
+	private final Timer writeTimer;
+
+	private volatile boolean running = true;
+
+	public GroupCommitter(String name, int maxBatchSize, Duration linger, Consumer<List<T>> writer,
+			MeterRegistry meterRegistry) {
+		this.maxBatchSize = maxBatchSize;
+		this.lingerNanos = linger.toNanos();
+		this.writer = writer;
+		this.batchSize = DistributionSummary.builder("orders.group-commit.batch.size")
+				.description("Writes committed together")
+				.tag("name", name)
+				.register(meterRegistry);
+		this.writeTimer = Timer.builder("orders.group-commit.write")
+				.description("Time to write and commit one batch")
+				.tag("name", name)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		this.writerThread = new Thread(this::run, "group-commit-" + name);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Completes once the batch holding the write is committed, or exceptionally with the writer's
+	 * exception.
+	 */
+	public CompletableFuture<Void> submit(T write) {
+		PendingWrite<T> pending = new PendingWrite<>(write);
+		if (!running) {
+			pending.future.completeExceptionally(new IllegalStateException("Group committer is closed"));
+			return pending.future;
+		}
+		queue.add(pending);
+		// close() may have drained the queue between the check and the add; nobody would take it now
+		if (!running && queue.remove(pending)) {
+			pending.future.completeExceptionally(new IllegalStateException("Group committer is closed"));
+		}
+		return pending.future;
+	}
+
+	/**
+	 * Writes what is queued and stops the writer thread.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		running = false;
+		writerThread.join(TimeUnit.SECONDS.toMillis(30));
+		List<PendingWrite<T>> unwritten = new ArrayList<>();
+		queue.drainTo(unwritten);
+		unwritten.forEach(pending -> pending.future.completeExceptionally(
+				new IllegalStateException("Group committer is closed")));
+	}
+
+	private void run() {
+		List<PendingWrite<T>> batch = new ArrayList<>(maxBatchSize);
+		try {
+			while (running || !queue.isEmpty()) {
+				PendingWrite<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				fill(batch, System.nanoTime() + lingerNanos);
+				write(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			batch.forEach(pending -> pending.future.completeExceptionally(e));
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void fill(List<PendingWrite<T>> batch, long deadline) throws InterruptedException {
+		while (batch.size() < maxBatchSize) {
+			queue.drainTo(batch, maxBatchSize - batch.size());
+			long remaining = deadline - System.nanoTime();
+			if (batch.size() >= maxBatchSize || remaining <= 0) {
+				return;
+			}
+			PendingWrite<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				return;
+			}
+			batch.add(next);
+		}
+	}
+
+	private void write(List<PendingWrite<T>> batch) {
+		Timer.Sample sample = Timer.start();
+		List<T> writes = new ArrayList<>(batch.size());
+		batch.forEach(pending -> writes.add(pending.write));
+		try {
+			writer.accept(writes);
+			batch.forEach(pending -> pending.future.complete(null));
+		} catch (Throwable e) {
+			// Errors too: a write left without an outcome would block its caller forever
+			if (batch.size() == 1) {
+				batch.get(0).future.completeExceptionally(e);
+			} else {
+				batch.forEach(this::writeAlone);
+			}
+		}
+		batchSize.record(batch.size());
+		sample.stop(writeTimer);
+	}
+
+	private void writeAlone(PendingWrite<T> pending) {
+		try {
+			writer.accept(Collections.singletonList(pending.write));
+			pending.future.complete(null);
+		} catch (Throwable e) {
+			pending.future.completeExceptionally(e);
+		}
+	}
+
+	private static class PendingWrite<T> {
+
+		private final T write;
+
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		PendingWrite(T write) {
+			this.write = write;
+		}
+	}
+
+}
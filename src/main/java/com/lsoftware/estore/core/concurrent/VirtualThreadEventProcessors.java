@@ -0,0 +1,81 @@
+package com.lsoftware.estore.core.concurrent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import org.axonframework.config.Configuration;
+import org.axonframework.config.EventProcessingConfigurer;
+import org.axonframework.eventhandling.TrackingEventProcessorConfiguration;
+import org.axonframework.springboot.EventProcessorProperties;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Runs the tracking event processors on virtual threads.
+ * <p>
+ * Processors without settings of their own (OrderSagaProcessor) get a default configuration with a
+ * virtual thread factory. The processors configured under {@code axon.eventhandling.processors}
+ * would be registered by Axon's auto-configuration, whose configuration has no thread factory: their
+ * settings are taken out of {@link EventProcessorProperties} before Axon reads them, and they are
+ * registered here with the same thread count, segments, batch size and claim interval. Processors
+ * with their own message source or sequencing policy are left to Axon.
+ */
+public class VirtualThreadEventProcessors implements BeanPostProcessor {
+
+	private final Map<String, EventProcessorProperties.ProcessorSettings> trackingProcessors = new LinkedHashMap<>();
+
+	private boolean propertiesSeen;
+
+	private EventProcessingConfigurer eventProcessingConfigurer;
+
+	@Override
+	public synchronized Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (bean instanceof EventProcessorProperties) {
+			takeTrackingProcessors((EventProcessorProperties) bean);
+			propertiesSeen = true;
+			registerWhenReady();
+		} else if (bean instanceof EventProcessingConfigurer) {
+			eventProcessingConfigurer = (EventProcessingConfigurer) bean;
+			registerWhenReady();
+		}
+		return bean;
+	}
+
+	private void takeTrackingProcessors(EventProcessorProperties eventProcessorProperties) {
+		Iterator<Map.Entry<String, EventProcessorProperties.ProcessorSettings>> processors =
+				eventProcessorProperties.getProcessors().entrySet().iterator();
+		while (processors.hasNext()) {
+			Map.Entry<String, EventProcessorProperties.ProcessorSettings> processor = processors.next();
+			EventProcessorProperties.ProcessorSettings settings = processor.getValue();
+			if (settings.getMode() == EventProcessorProperties.Mode.TRACKING && settings.getSource() == null
+					&& settings.getSequencingPolicy() == null) {
+				trackingProcessors.put(processor.getKey(), settings);
+				processors.remove();
+			}
+		}
+	}
+
+	// Both beans are needed and either may be initialized first
+	private void registerWhenReady() {
+		if (!propertiesSeen || eventProcessingConfigurer == null) {
+			return;
+		}
+		eventProcessingConfigurer.registerTrackingEventProcessorConfiguration(configuration ->
+				TrackingEventProcessorConfiguration.forSingleThreadedProcessing()
+						.andThreadFactory(VirtualThreadEventProcessors::threadFactory));
+		trackingProcessors.forEach((name, settings) -> eventProcessingConfigurer.registerTrackingEventProcessor(
+				name, Configuration::eventStore, configuration ->
+						TrackingEventProcessorConfiguration.forParallelProcessing(settings.getThreadCount())
+								.andBatchSize(settings.getBatchSize())
+								.andInitialSegmentsCount(settings.getInitialSegmentCount())
+								.andTokenClaimInterval(settings.getTokenClaimInterval(),
+										settings.getTokenClaimIntervalTimeUnit())
+								.andThreadFactory(VirtualThreadEventProcessors::threadFactory)));
+	}
+
+	private static ThreadFactory threadFactory(String processorName) {
+		return VirtualThreads.newThreadFactory("EventProcessor[" + processorName + "]-");
+	}
+
+}
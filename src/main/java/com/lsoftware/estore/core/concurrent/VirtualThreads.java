@@ -0,0 +1,68 @@
+package com.lsoftware.estore.core.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads for a service compiled for Java 11: the JDK 21 API is looked up reflectively, so
+ * the build stays on 11 and the mode only works when the service runs on 21 or later.
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	public static boolean isSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return Runtime.version().feature() >= 21;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * {@code Executors.newVirtualThreadPerTaskExecutor()}: every task runs on a new virtual thread.
+	 *
+	 * @throws IllegalStateException when the JVM has no virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor() {
+		if (!isSupported()) {
+			throw new IllegalStateException("Virtual threads need Java 21 or later, running on "
+					+ Runtime.version());
+		}
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not create a virtual thread executor", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create a virtual thread executor", e);
+		}
+	}
+
+	/**
+	 * {@code Thread.ofVirtual().name(namePrefix, 0).factory()}: virtual threads named
+	 * {@code namePrefix0}, {@code namePrefix1} and so on.
+	 *
+	 * @throws IllegalStateException when the JVM has no virtual threads
+	 */
+	public static ThreadFactory newThreadFactory(String namePrefix) {
+		if (!isSupported()) {
+			throw new IllegalStateException("Virtual threads need Java 21 or later, running on "
+					+ Runtime.version());
+		}
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not create a virtual thread factory", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create a virtual thread factory", e);
+		}
+	}
+
+}
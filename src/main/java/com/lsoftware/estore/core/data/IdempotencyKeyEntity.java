@@ -0,0 +1,59 @@
+package com.lsoftware.estore.core.data;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.springframework.data.domain.Persistable;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "idempotency_keys")
+public class IdempotencyKeyEntity implements Serializable, Persistable<String> {
+
+    private static final long serialVersionUID = -4519263790212417356L;
+
+    @Id
+    private String idempotencyKey;
+    private String orderId;
+    private Instant createdAt;
+
+    // Always inserted, so a second request with the same key fails on the primary key instead of
+    // being merged over the first one
+    @Transient
+    @EqualsAndHashCode.Exclude
+    private boolean newEntity = true;
+
+    public IdempotencyKeyEntity(String idempotencyKey, String orderId, Instant createdAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.orderId = orderId;
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String getId() {
+        return idempotencyKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PrePersist
+    void markNotNew() {
+        this.newEntity = false;
+    }
+}
@@ -0,0 +1,12 @@
+package com.lsoftware.estore.core.data;
+
+import java.util.stream.Stream;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+public interface IdempotencyKeysRepository extends JpaRepository<IdempotencyKeyEntity, String> {
+
+    @Query("SELECT k.idempotencyKey FROM IdempotencyKeyEntity k")
+    Stream<String> streamAllKeys();
+}
@@ -6,16 +6,27 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.springframework.data.domain.Persistable;
 
 import com.lsoftware.estore.core.model.OrderStatus;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 @Data
 @Entity
-@Table(name = "orders")
-public class OrderEntity implements Serializable {
+// Each listing filter has an index ending in orderId, so a keyset page is a range scan
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_user_id_order_id", columnList = "userId, orderId"),
+        @Index(name = "idx_orders_product_id_order_id", columnList = "productId, orderId"),
+        @Index(name = "idx_orders_order_status_order_id", columnList = "orderStatus, orderId") })
+public class OrderEntity implements Serializable, Persistable<String> {
 
     private static final long serialVersionUID = 5313493413859894403L;
 
@@ -29,4 +40,26 @@ public class OrderEntity implements Serializable {
     
     @Enumerated(EnumType.STRING)
     private OrderStatus orderStatus;
+    
+    // The id is assigned by the projection, so Spring Data cannot tell new rows from existing ones
+    // and would merge (select first) on every save of a new order.
+    @Transient
+    @EqualsAndHashCode.Exclude
+    private boolean newEntity = true;
+
+    @Override
+    public String getId() {
+        return orderId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PrePersist
+    void markNotNew() {
+        this.newEntity = false;
+    }
 }
@@ -0,0 +1,30 @@
+package com.lsoftware.estore.core.data;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "order_status_statistics")
+public class OrderStatusStatisticsEntity implements Serializable {
+
+    private static final long serialVersionUID = 3034826181554871420L;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private OrderStatus orderStatus;
+    private long orders;
+}
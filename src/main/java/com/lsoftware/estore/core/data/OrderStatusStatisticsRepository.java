@@ -0,0 +1,23 @@
+package com.lsoftware.estore.core.data;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.lsoftware.estore.core.model.OrderStatus;
+
+public interface OrderStatusStatisticsRepository extends JpaRepository<OrderStatusStatisticsEntity, OrderStatus> {
+
+    // Adds to the stored total in the database, so concurrent segments never overwrite each other
+    @Modifying
+    @Query("update OrderStatusStatisticsEntity s set s.orders = s.orders + :orders where s.orderStatus = :orderStatus")
+    int increment(@Param("orderStatus") OrderStatus orderStatus, @Param("orders") long orders);
+
+    // Creates the row with a zero total unless it exists, so increment always has a row to add to
+    @Modifying
+    @Query(value = "insert into order_status_statistics (order_status, orders) select :orderStatus, 0 from dual "
+            + "where not exists (select 1 from order_status_statistics where order_status = :orderStatus)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("orderStatus") String orderStatus);
+}
@@ -1,7 +1,28 @@
 package com.lsoftware.estore.core.data;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.lsoftware.estore.core.model.OrderStatus;
 
 public interface OrdersRepository extends JpaRepository <OrderEntity, String>{
     OrderEntity findByOrderId(String orderId);
-}
\ No newline at end of file
+
+    // Keyset pages: the orders after the given orderId, the Pageable only supplies the limit
+    List<OrderEntity> findByUserIdAndOrderIdGreaterThanOrderByOrderIdAsc(String userId, String afterOrderId,
+            Pageable pageable);
+
+    List<OrderEntity> findByProductIdAndOrderIdGreaterThanOrderByOrderIdAsc(String productId, String afterOrderId,
+            Pageable pageable);
+
+    List<OrderEntity> findByOrderStatusAndOrderIdGreaterThanOrderByOrderIdAsc(OrderStatus orderStatus,
+            String afterOrderId, Pageable pageable);
+
+    @Query("SELECT o.orderId FROM OrderEntity o WHERE o.orderId IN :orderIds")
+    List<String> findExistingOrderIds(@Param("orderIds") Collection<String> orderIds);
+}
@@ -0,0 +1,26 @@
+package com.lsoftware.estore.core.data;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "product_order_statistics")
+public class ProductOrderStatisticsEntity implements Serializable {
+
+    private static final long serialVersionUID = -1942630958206311270L;
+
+    @Id
+    private String productId;
+    private long orders;
+    private long quantity;
+}
@@ -0,0 +1,16 @@
+package com.lsoftware.estore.core.data;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ProductOrderStatisticsRepository extends JpaRepository<ProductOrderStatisticsEntity, String> {
+
+    // Adds to the stored totals in the database, so concurrent segments never overwrite each other
+    @Modifying
+    @Query("update ProductOrderStatisticsEntity p set p.orders = p.orders + :orders, "
+            + "p.quantity = p.quantity + :quantity where p.productId = :productId")
+    int increment(@Param("productId") String productId, @Param("orders") long orders,
+            @Param("quantity") long quantity);
+}
@@ -0,0 +1,38 @@
+package com.lsoftware.estore.core.mapping;
+
+import com.lsoftware.estore.command.commands.CreateOrderCommand;
+import com.lsoftware.estore.core.data.OrderEntity;
+import com.lsoftware.estore.core.events.OrderCreatedEvent;
+
+/**
+ * Plain field copies for the order creation path, in place of {@code BeanUtils.copyProperties}:
+ * no property introspection and nothing allocated besides the target. A field added to one of
+ * these classes has to be added here as well.
+ */
+public final class OrderMapper {
+
+	private OrderMapper() {
+	}
+
+	public static OrderCreatedEvent toOrderCreatedEvent(CreateOrderCommand createOrderCommand) {
+		return new OrderCreatedEvent(
+				createOrderCommand.getOrderId(),
+				createOrderCommand.getProductId(),
+				createOrderCommand.getUserId(),
+				createOrderCommand.getQuantity(),
+				createOrderCommand.getAddressId(),
+				createOrderCommand.getOrderStatus());
+	}
+
+	public static OrderEntity toOrderEntity(OrderCreatedEvent orderCreatedEvent) {
+		OrderEntity orderEntity = new OrderEntity();
+		orderEntity.setOrderId(orderCreatedEvent.getOrderId());
+		orderEntity.setProductId(orderCreatedEvent.getProductId());
+		orderEntity.setUserId(orderCreatedEvent.getUserId());
+		orderEntity.setQuantity(orderCreatedEvent.getQuantity());
+		orderEntity.setAddressId(orderCreatedEvent.getAddressId());
+		orderEntity.setOrderStatus(orderCreatedEvent.getOrderStatus());
+		return orderEntity;
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.lsoftware.estore.core.metrics;
+
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.Message;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.MetaData;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.slf4j.MDC;
+
+/**
+ * Puts the {@code orderId} and {@code traceId} metadata of the message being handled into the
+ * logging MDC. traceId is set by Axon on every message dispatched while handling another one, in
+ * every service, so it also ties together the events the products and payments services publish
+ * for an order. orderId is propagated by the {@code orderId} correlation data provider.
+ */
+public class CorrelationMdcInterceptor<T extends Message<?>> implements MessageHandlerInterceptor<T> {
+
+	public static final String ORDER_ID = "orderId";
+
+	public static final String TRACE_ID = "traceId";
+
+	@Override
+	public Object handle(UnitOfWork<? extends T> unitOfWork, InterceptorChain interceptorChain) throws Exception {
+		MetaData metaData = unitOfWork.getMessage().getMetaData();
+		String previousOrderId = MDC.get(ORDER_ID);
+		String previousTraceId = MDC.get(TRACE_ID);
+		put(ORDER_ID, metaData.get(ORDER_ID));
+		put(TRACE_ID, metaData.get(TRACE_ID));
+		try {
+			return interceptorChain.proceed();
+		} finally {
+			restore(ORDER_ID, previousOrderId);
+			restore(TRACE_ID, previousTraceId);
+		}
+	}
+
+	private static void put(String key, Object value) {
+		if (value != null) {
+			MDC.put(key, value.toString());
+		}
+	}
+
+	private static void restore(String key, String previousValue) {
+		if (previousValue != null) {
+			MDC.put(key, previousValue);
+		} else {
+			MDC.remove(key);
+		}
+	}
+
+}
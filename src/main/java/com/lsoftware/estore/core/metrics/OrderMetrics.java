@@ -0,0 +1,114 @@
+package com.lsoftware.estore.core.metrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers for the stages an order goes through, published with percentile histograms so they can
+ * be aggregated across nodes in Prometheus:
+ * <ul>
+ * <li>{@code orders.create} - POST /orders, per phase ({@code send}, {@code await-summary})</li>
+ * <li>{@code orders.saga.step} - each remote call OrderSaga makes</li>
+ * <li>{@code orders.saga.duration} - from OrderCreatedEvent until the order is approved or rejected</li>
+ * <li>{@code orders.projection.batch} - one write of the order-group projection</li>
+ * </ul>
+ * Individual orders are followed through the logs instead ({@code orderId} and {@code traceId}
+ * in the MDC, see {@link CorrelationMdcInterceptor}); an orderId tag would create a time series per
+ * order.
+ * <p>
+ * Each timer is registered once and kept, so recording costs no builder or registry lookup on the
+ * paths being measured.
+ */
+@Component
+public class OrderMetrics {
+
+	public static final String SUCCESS = "success";
+
+	public static final String FAILURE = "failure";
+
+	private final MeterRegistry meterRegistry;
+
+	private final DistributionSummary projectionBatchSize;
+
+	private final Timer projectionBatch;
+
+	// By name, tag value and outcome
+	private final ConcurrentMap<List<String>, Timer> timers = new ConcurrentHashMap<>();
+
+	public OrderMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+		this.projectionBatchSize = DistributionSummary.builder("orders.projection.batch.size")
+				.description("Orders written per order-group projection batch")
+				.register(meterRegistry);
+		this.projectionBatch = Timer.builder("orders.projection.batch")
+				.description("Time to write one batch of the order-group projection")
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	public Timer.Sample startTimer() {
+		return Timer.start(meterRegistry);
+	}
+
+	public void recordCreateOrder(Timer.Sample sample, String phase, String outcome) {
+		sample.stop(timer("orders.create", "Time spent in POST /orders per phase", "phase", phase, outcome));
+	}
+
+	public void recordSagaStep(Timer.Sample sample, String step, String outcome) {
+		sample.stop(timer("orders.saga.step", "Time OrderSaga waits for a remote step", "step", step, outcome));
+	}
+
+	/**
+	 * Records the step once the future completes, successfully or not.
+	 */
+	public <T> CompletableFuture<T> timeSagaStep(String step, CompletableFuture<T> future) {
+		Timer.Sample sample = startTimer();
+		return future.whenComplete((result, exception) -> recordSagaStep(sample, step,
+				exception == null ? SUCCESS : FAILURE));
+	}
+
+	public void recordSagaCompleted(Instant orderCreatedAt, OrderStatus orderStatus) {
+		if (orderCreatedAt == null) {
+			// Saga started before the timestamp was kept
+			return;
+		}
+		timer("orders.saga.duration", "Time from order creation until it is approved or rejected", "status",
+				orderStatus.name(), null)
+				.record(Duration.between(orderCreatedAt, Instant.now()));
+	}
+
+	public void recordProjectionBatch(Timer.Sample sample, int orders) {
+		sample.stop(projectionBatch);
+		projectionBatchSize.record(orders);
+	}
+
+	private Timer timer(String name, String description, String tagKey, String tagValue, String outcome) {
+		return timers.computeIfAbsent(Arrays.asList(name, tagValue, outcome),
+				key -> registerTimer(name, description, tagKey, tagValue, outcome));
+	}
+
+	private Timer registerTimer(String name, String description, String tagKey, String tagValue, String outcome) {
+		Timer.Builder builder = Timer.builder(name)
+				.description(description)
+				.tag(tagKey, tagValue)
+				.publishPercentileHistogram();
+		if (outcome != null) {
+			builder.tag("outcome", outcome);
+		}
+		return builder.register(meterRegistry);
+	}
+
+}
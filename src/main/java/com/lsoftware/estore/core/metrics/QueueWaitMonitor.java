@@ -0,0 +1,81 @@
+package com.lsoftware.estore.core.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.Message;
+import org.axonframework.messaging.MessageDispatchInterceptor;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records {@code orders.messages.queue.wait}: the time between dispatching a message and a handler
+ * starting on it, which covers the bus, Axon Server and the handler's queue. Commands and queries
+ * are stamped with {@code dispatchedAt} metadata on dispatch; events use their own timestamp.
+ * Handler time itself is reported by the Axon Micrometer monitors.
+ */
+public class QueueWaitMonitor<T extends Message<?>> implements MessageDispatchInterceptor<T>, MessageHandlerInterceptor<T> {
+
+	public static final String DISPATCHED_AT = "dispatchedAt";
+
+	private final MeterRegistry meterRegistry;
+
+	private final String source;
+
+	// One timer per message type, registered on first use
+	private final ConcurrentMap<Class<?>, Timer> queueWaits = new ConcurrentHashMap<>();
+
+	/**
+	 * @param source the bus ({@code command}, {@code query}) or event processor this monitor is
+	 *               registered on, used as the {@code source} tag
+	 */
+	public QueueWaitMonitor(MeterRegistry meterRegistry, String source) {
+		this.meterRegistry = meterRegistry;
+		this.source = source;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public BiFunction<Integer, T, T> handle(List<? extends T> messages) {
+		return (index, message) -> (T) message.andMetaData(
+				Collections.singletonMap(DISPATCHED_AT, System.currentTimeMillis()));
+	}
+
+	@Override
+	public Object handle(UnitOfWork<? extends T> unitOfWork, InterceptorChain interceptorChain) throws Exception {
+		Message<?> message = unitOfWork.getMessage();
+		long dispatchedAt = dispatchedAt(message);
+		if (dispatchedAt > 0) {
+			queueWaits.computeIfAbsent(message.getPayloadType(), this::queueWait)
+					.record(Math.max(0, System.currentTimeMillis() - dispatchedAt), TimeUnit.MILLISECONDS);
+		}
+		return interceptorChain.proceed();
+	}
+
+	private Timer queueWait(Class<?> payloadType) {
+		return Timer.builder("orders.messages.queue.wait")
+				.description("Time between dispatching a message and handling it")
+				.tag("source", source)
+				.tag("message", payloadType.getSimpleName())
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	private static long dispatchedAt(Message<?> message) {
+		if (message instanceof EventMessage) {
+			return ((EventMessage<?>) message).getTimestamp().toEpochMilli();
+		}
+		Object dispatchedAt = message.getMetaData().get(DISPATCHED_AT);
+		return dispatchedAt instanceof Number ? ((Number) dispatchedAt).longValue() : -1;
+	}
+
+}
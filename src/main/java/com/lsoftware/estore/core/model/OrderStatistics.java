@@ -0,0 +1,13 @@
+package com.lsoftware.estore.core.model;
+
+import lombok.Value;
+
+@Value
+public class OrderStatistics {
+	private final long created;
+	private final long approved;
+	private final long rejected;
+	// Share of the completed orders, 0 while none has completed
+	private final double approvalRate;
+	private final double rejectionRate;
+}
@@ -0,0 +1,10 @@
+package com.lsoftware.estore.core.model;
+
+import java.util.Map;
+
+import lombok.Value;
+
+@Value
+public class OrderStatusCounts {
+	private final Map<OrderStatus, Long> counts;
+}
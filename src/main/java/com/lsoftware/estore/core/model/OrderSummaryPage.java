@@ -0,0 +1,12 @@
+package com.lsoftware.estore.core.model;
+
+import java.util.List;
+
+import lombok.Value;
+
+@Value
+public class OrderSummaryPage {
+	private final List<OrderSummary> orders;
+	// orderId to pass as "after" for the next page, null on the last page
+	private final String nextCursor;
+}
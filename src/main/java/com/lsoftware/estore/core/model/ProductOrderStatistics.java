@@ -0,0 +1,10 @@
+package com.lsoftware.estore.core.model;
+
+import lombok.Value;
+
+@Value
+public class ProductOrderStatistics {
+	private final String productId;
+	private final long orders;
+	private final long quantity;
+}
@@ -0,0 +1,68 @@
+package com.lsoftware.estore.core.serialization;
+
+import org.axonframework.serialization.Converter;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.SerializedType;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.SimpleSerializedObject;
+
+/**
+ * Writes with a compact binary serializer and reads both that format and the XStream XML written
+ * before it was introduced (or by services that still use XStream). The format is told apart by
+ * the first byte: XML starts with {@code <}, which no CBOR object or array does.
+ */
+public class FormatDetectingSerializer implements Serializer {
+
+	private final Serializer serializer;
+
+	private final Serializer xmlSerializer;
+
+	public FormatDetectingSerializer(Serializer serializer, Serializer xmlSerializer) {
+		this.serializer = serializer;
+		this.xmlSerializer = xmlSerializer;
+	}
+
+	@Override
+	public <T> SerializedObject<T> serialize(Object object, Class<T> expectedRepresentation) {
+		return serializer.serialize(object, expectedRepresentation);
+	}
+
+	@Override
+	public <T> boolean canSerializeTo(Class<T> expectedRepresentation) {
+		return serializer.canSerializeTo(expectedRepresentation);
+	}
+
+	@Override
+	public <S, T> T deserialize(SerializedObject<S> serializedObject) {
+		byte[] data = getConverter().convert(serializedObject.getData(), serializedObject.getContentType(),
+				byte[].class);
+		SerializedObject<byte[]> bytes = new SimpleSerializedObject<>(data, byte[].class, serializedObject.getType());
+		return isXml(data) ? xmlSerializer.deserialize(bytes) : serializer.deserialize(bytes);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Class classForType(SerializedType type) {
+		return serializer.classForType(type);
+	}
+
+	@Override
+	public SerializedType typeForClass(Class type) {
+		return serializer.typeForClass(type);
+	}
+
+	@Override
+	public Converter getConverter() {
+		return serializer.getConverter();
+	}
+
+	private static boolean isXml(byte[] data) {
+		for (byte b : data) {
+			if (!Character.isWhitespace(b)) {
+				return b == '<';
+			}
+		}
+		return false;
+	}
+
+}
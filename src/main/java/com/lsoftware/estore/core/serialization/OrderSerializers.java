@@ -0,0 +1,53 @@
+package com.lsoftware.estore.core.serialization;
+
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.json.JacksonSerializer;
+import org.axonframework.serialization.xml.CompactDriver;
+import org.axonframework.serialization.xml.XStreamSerializer;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * The serializers the order events and saga state are stored with.
+ */
+public final class OrderSerializers {
+
+	private OrderSerializers() {
+	}
+
+	/**
+	 * CBOR for events and sagas, falling back to XStream for XML written before.
+	 */
+	public static Serializer compact() {
+		return new FormatDetectingSerializer(cbor(), xStream());
+	}
+
+	/**
+	 * Jackson on CBOR. Fields are read directly, like XStream does, so events, the aggregate
+	 * snapshot and OrderSaga need no getters or annotations; the @Value events are created through
+	 * the @ConstructorProperties constructors Lombok adds (see lombok.config).
+	 */
+	public static Serializer cbor() {
+		ObjectMapper objectMapper = new ObjectMapper(new CBORFactory())
+				.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+				.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+				.registerModule(new JavaTimeModule());
+		return JacksonSerializer.builder().objectMapper(objectMapper).build();
+	}
+
+	/**
+	 * Same format as the XStream serializer Axon configures by default.
+	 */
+	public static Serializer xStream() {
+		XStream xStream = new XStream(new CompactDriver());
+		xStream.allowTypesByWildcard(new String[] { "com.lsoftware.**" });
+		return XStreamSerializer.builder().xStream(xStream).build();
+	}
+
+}
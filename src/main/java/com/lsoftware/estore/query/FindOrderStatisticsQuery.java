@@ -0,0 +1,7 @@
+package com.lsoftware.estore.query;
+
+import lombok.Value;
+
+@Value
+public class FindOrderStatisticsQuery {
+}
@@ -0,0 +1,18 @@
+package com.lsoftware.estore.query;
+
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import lombok.Value;
+
+/**
+ * A page of orders with one of userId, productId or orderStatus, ordered by orderId. The next page
+ * starts after the {@code nextCursor} of the previous one; {@code after} is null for the first page.
+ */
+@Value
+public class FindOrdersQuery {
+	private final String userId;
+	private final String productId;
+	private final OrderStatus orderStatus;
+	private final String after;
+	private final int limit;
+}
@@ -0,0 +1,8 @@
+package com.lsoftware.estore.query;
+
+import lombok.Value;
+
+@Value
+public class FindProductOrderStatisticsQuery {
+	private final String productId;
+}
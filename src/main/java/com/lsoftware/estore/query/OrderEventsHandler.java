@@ -1,8 +1,21 @@
 package com.lsoftware.estore.query;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import org.axonframework.config.ProcessingGroup;
 import org.axonframework.eventhandling.EventHandler;
-import org.springframework.beans.BeanUtils;
+import org.axonframework.eventhandling.ReplayToken;
+import org.axonframework.eventhandling.ResetHandler;
+import org.axonframework.eventhandling.TrackedEventMessage;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
 import org.springframework.stereotype.Component;
 
 import com.lsoftware.estore.core.data.OrderEntity;
@@ -10,43 +23,144 @@ import com.lsoftware.estore.core.data.OrdersRepository;
 import com.lsoftware.estore.core.events.OrderApprovedEvent;
 import com.lsoftware.estore.core.events.OrderCreatedEvent;
 import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.mapping.OrderMapper;
+import com.lsoftware.estore.core.metrics.OrderMetrics;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import io.micrometer.core.instrument.Timer;
 
+/**
+ * Projects order events into the orders table. Events are collected per event processor batch
+ * and written when the batch commits: one {@code findAllById} for the orders the batch did not
+ * create itself, one id lookup for the orders it did create (a redelivered OrderCreatedEvent
+ * updates its row instead of failing on the primary key), then a single {@code saveAll} that
+ * Hibernate turns into JDBC batches. Once the
+ * batch is committed the written orders are put into the {@link OrderSummaryCache}, except while
+ * the processor is replaying: a rebuild would only churn the cache with old orders. The cache is
+ * told which segments are replaying, and cleared once the last of them has gone live.
+ */
 @Component
-@ProcessingGroup("order-group")
+@ProcessingGroup(OrderEventsHandler.PROCESSING_GROUP)
 public class OrderEventsHandler {
-    
+
+    public static final String PROCESSING_GROUP = "order-group";
+
+    private static final String BATCH_RESOURCE = OrderEventsHandler.class.getName() + ".batch";
+
+    // The TrackingEventProcessor puts the segment of the batch in the unit of work under this key
+    private static final String SEGMENT_ID_RESOURCE = "Processor[" + PROCESSING_GROUP + "]/SegmentId";
+
     private final OrdersRepository ordersRepository;
-    
-    public OrderEventsHandler(OrdersRepository ordersRepository) {
+
+    private final OrderSummaryCache orderSummaryCache;
+
+    private final OrderMetrics orderMetrics;
+
+    private final TokenStore tokenStore;
+
+    public OrderEventsHandler(OrdersRepository ordersRepository, OrderSummaryCache orderSummaryCache,
+            OrderMetrics orderMetrics, TokenStore tokenStore) {
         this.ordersRepository = ordersRepository;
+        this.orderSummaryCache = orderSummaryCache;
+        this.orderMetrics = orderMetrics;
+        this.tokenStore = tokenStore;
     }
 
     @EventHandler
     public void on(OrderCreatedEvent event) throws Exception {
-        OrderEntity orderEntity = new OrderEntity();
-        BeanUtils.copyProperties(event, orderEntity);
- 
-        this.ordersRepository.save(orderEntity);
+        OrderEntity orderEntity = OrderMapper.toOrderEntity(event);
+
+        currentBatch().created.put(orderEntity.getOrderId(), orderEntity);
     }
-    
-    
+
+
     @EventHandler
     public void on(OrderApprovedEvent event) throws Exception {
-        OrderEntity orderEntity = ordersRepository.findByOrderId(event.getOrderId());
-        
-        if (orderEntity == null) {
-			// Do something
-        	return;
-		}
-        orderEntity.setOrderStatus(event.getOrderStatus());
-        this.ordersRepository.save(orderEntity);
-    }
-    
+        currentBatch().statusChanged(event.getOrderId(), event.getOrderStatus());
+    }
+
     @EventHandler
     public void on(OrderRejectedEvent event) throws Exception {
-    	 OrderEntity orderEntity = ordersRepository.findByOrderId(event.getOrderId());
-    	 orderEntity.setOrderStatus(event.getOrderStatus());
-         this.ordersRepository.save(orderEntity);
+        currentBatch().statusChanged(event.getOrderId(), event.getOrderStatus());
+    }
+
+    /**
+     * Called by {@link ProjectionReplayService} (through the event processor) before the projection
+     * is rebuilt from the start of the event store.
+     */
+    @ResetHandler
+    public void reset() {
+        ordersRepository.deleteAllInBatch();
+        // All segments, including those no node has claimed yet, replay before the cache is used again
+        orderSummaryCache.replayStarted(Arrays.stream(tokenStore.fetchSegments(PROCESSING_GROUP))
+                .boxed()
+                .collect(Collectors.toList()));
+        orderSummaryCache.invalidateAll();
     }
-    
+
+    private Batch currentBatch() {
+        UnitOfWork<?> unitOfWork = CurrentUnitOfWork.get().root();
+        return unitOfWork.getOrComputeResource(BATCH_RESOURCE, key -> {
+            Batch batch = new Batch();
+            unitOfWork.onPrepareCommit(u -> flush(batch));
+            Integer segmentId = unitOfWork.getResource(SEGMENT_ID_RESOURCE);
+            int segment = segmentId == null ? 0 : segmentId;
+            if (isReplay(unitOfWork)) {
+                unitOfWork.afterCommit(u -> orderSummaryCache.replayStarted(Collections.singleton(segment)));
+            } else {
+                unitOfWork.afterCommit(u -> {
+                    orderSummaryCache.replayEnded(segment);
+                    batch.written.forEach(orderSummaryCache::put);
+                });
+            }
+            return batch;
+        });
+    }
+
+    private static boolean isReplay(UnitOfWork<?> unitOfWork) {
+        return unitOfWork.getMessage() instanceof TrackedEventMessage
+                && ((TrackedEventMessage<?>) unitOfWork.getMessage()).trackingToken() instanceof ReplayToken;
+    }
+
+    private void flush(Batch batch) {
+        Timer.Sample sample = orderMetrics.startTimer();
+        List<OrderEntity> changed = new ArrayList<>(batch.created.values());
+
+        if (!batch.created.isEmpty()) {
+            for (String orderId : ordersRepository.findExistingOrderIds(batch.created.keySet())) {
+                batch.created.get(orderId).setNewEntity(false);
+            }
+        }
+
+        if (!batch.statusChanges.isEmpty()) {
+            for (OrderEntity orderEntity : ordersRepository.findAllById(batch.statusChanges.keySet())) {
+                orderEntity.setOrderStatus(batch.statusChanges.get(orderEntity.getOrderId()));
+                changed.add(orderEntity);
+            }
+        }
+
+        this.ordersRepository.saveAll(changed);
+        batch.written = changed;
+        orderMetrics.recordProjectionBatch(sample, changed.size());
+    }
+
+    private static class Batch {
+
+        private final Map<String, OrderEntity> created = new LinkedHashMap<>();
+
+        // Status changes for orders created in an earlier batch; the last one per order wins
+        private final Map<String, OrderStatus> statusChanges = new LinkedHashMap<>();
+
+        private List<OrderEntity> written = Collections.emptyList();
+
+        void statusChanged(String orderId, OrderStatus orderStatus) {
+            OrderEntity orderEntity = created.get(orderId);
+            if (orderEntity != null) {
+                orderEntity.setOrderStatus(orderStatus);
+            } else {
+                statusChanges.put(orderId, orderStatus);
+            }
+        }
+    }
+
 }
@@ -1,25 +1,71 @@
 package com.lsoftware.estore.query;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 import org.axonframework.queryhandling.QueryHandler;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
 import com.lsoftware.estore.core.data.OrderEntity;
 import com.lsoftware.estore.core.data.OrdersRepository;
 import com.lsoftware.estore.core.model.OrderSummary;
+import com.lsoftware.estore.core.model.OrderSummaryPage;
 
 @Component
 public class OrderQueriesHandler {
 	
 	OrdersRepository ordersRepository;
 	
-	public OrderQueriesHandler(OrdersRepository ordersRepository) {
+	OrderSummaryCache orderSummaryCache;
+	
+	public OrderQueriesHandler(OrdersRepository ordersRepository, OrderSummaryCache orderSummaryCache) {
 		this.ordersRepository = ordersRepository;
+		this.orderSummaryCache = orderSummaryCache;
 	}
 	
 	@QueryHandler
 	public OrderSummary findOrder(FindOrderQuery findOrderQuery) {
+		OrderSummary orderSummary = orderSummaryCache.getIfPresent(findOrderQuery.getOrderId());
+		if (orderSummary != null) {
+			return orderSummary;
+		}
+		
+		long fillStamp = orderSummaryCache.fillStamp();
 		OrderEntity orderEntity = ordersRepository.findByOrderId(findOrderQuery.getOrderId());
-		return new OrderSummary(orderEntity.getOrderId(), orderEntity.getOrderStatus(), "");
+		if (orderEntity == null) {
+			// Not projected yet
+			return null;
+		}
+		return orderSummaryCache.putIfAbsent(orderEntity, fillStamp);
+	}
+	
+	@QueryHandler
+	public OrderSummaryPage findOrders(FindOrdersQuery findOrdersQuery) {
+		String after = findOrdersQuery.getAfter() == null ? "" : findOrdersQuery.getAfter();
+		Pageable limit = PageRequest.of(0, findOrdersQuery.getLimit());
+		
+		List<OrderEntity> orderEntities;
+		if (findOrdersQuery.getUserId() != null) {
+			orderEntities = ordersRepository.findByUserIdAndOrderIdGreaterThanOrderByOrderIdAsc(
+					findOrdersQuery.getUserId(), after, limit);
+		} else if (findOrdersQuery.getProductId() != null) {
+			orderEntities = ordersRepository.findByProductIdAndOrderIdGreaterThanOrderByOrderIdAsc(
+					findOrdersQuery.getProductId(), after, limit);
+		} else if (findOrdersQuery.getOrderStatus() != null) {
+			orderEntities = ordersRepository.findByOrderStatusAndOrderIdGreaterThanOrderByOrderIdAsc(
+					findOrdersQuery.getOrderStatus(), after, limit);
+		} else {
+			throw new IllegalArgumentException("One of userId, productId or orderStatus is required");
+		}
+		
+		List<OrderSummary> orders = orderEntities.stream()
+				.map(OrderSummaryCache::toOrderSummary)
+				.collect(Collectors.toList());
+		String nextCursor = orders.size() < findOrdersQuery.getLimit() ? null 
+				: orders.get(orders.size() - 1).getOrderId();
+		return new OrderSummaryPage(orders, nextCursor);
 	}
 
 }
@@ -0,0 +1,155 @@
+package com.lsoftware.estore.query;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.axonframework.config.ProcessingGroup;
+import org.axonframework.eventhandling.EventHandler;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.ResetHandler;
+import org.axonframework.eventhandling.async.SequencingPolicy;
+import org.axonframework.eventhandling.async.SequentialPerAggregatePolicy;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.lsoftware.estore.core.data.OrderStatusStatisticsRepository;
+import com.lsoftware.estore.core.data.ProductOrderStatisticsEntity;
+import com.lsoftware.estore.core.data.ProductOrderStatisticsRepository;
+import com.lsoftware.estore.core.events.OrderApprovedEvent;
+import com.lsoftware.estore.core.events.OrderCreatedEvent;
+import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+/**
+ * Running totals per product (orders, quantity) and per order status, kept next to the orders
+ * projection in their own processing group so they can lag or be replayed independently.
+ * <p>
+ * Each segment thread adds up the events of its batch in memory and writes the sums once, as
+ * {@code SET orders = orders + ?} updates, when the batch commits. The totals are therefore
+ * written in the same transaction as the processor's token: a restart neither loses nor double
+ * counts events, which a timer-based flush of shared counters could not guarantee.
+ * <p>
+ * No two segments ever insert the same row: {@link #SEQUENCING_POLICY} sends all OrderCreatedEvents
+ * of a product to one segment, so only that segment creates the product's row, and the order status
+ * rows are created with a zero total before the processor starts and again on reset.
+ */
+@Component
+@ProcessingGroup(OrderStatisticsEventsHandler.PROCESSING_GROUP)
+public class OrderStatisticsEventsHandler {
+
+    public static final String PROCESSING_GROUP = "order-statistics-group";
+
+    /**
+     * OrderCreatedEvents by productId, the other events by order as usual.
+     */
+    public static final SequencingPolicy<EventMessage<?>> SEQUENCING_POLICY = event ->
+            event.getPayload() instanceof OrderCreatedEvent
+                    ? ((OrderCreatedEvent) event.getPayload()).getProductId()
+                    : SequentialPerAggregatePolicy.instance().getSequenceIdentifierFor(event);
+
+    private static final String DELTAS_RESOURCE = OrderStatisticsEventsHandler.class.getName() + ".deltas";
+
+    private final ProductOrderStatisticsRepository productOrderStatisticsRepository;
+
+    private final OrderStatusStatisticsRepository orderStatusStatisticsRepository;
+
+    private final TransactionTemplate transaction;
+
+    public OrderStatisticsEventsHandler(ProductOrderStatisticsRepository productOrderStatisticsRepository,
+            OrderStatusStatisticsRepository orderStatusStatisticsRepository,
+            PlatformTransactionManager transactionManager) {
+        this.productOrderStatisticsRepository = productOrderStatisticsRepository;
+        this.orderStatusStatisticsRepository = orderStatusStatisticsRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    // One transaction per status: a node starting at the same time may create some of the rows first
+    @PostConstruct
+    void createOrderStatusRows() {
+        for (OrderStatus orderStatus : OrderStatus.values()) {
+            try {
+                transaction.executeWithoutResult(
+                        status -> orderStatusStatisticsRepository.insertIfAbsent(orderStatus.name()));
+            } catch (DataIntegrityViolationException e) {
+                // Created by the other node
+            }
+        }
+    }
+
+    @EventHandler
+    public void on(OrderCreatedEvent event) {
+        Deltas deltas = currentDeltas();
+        Counter product = deltas.products.computeIfAbsent(event.getProductId(), productId -> new Counter());
+        product.orders++;
+        product.quantity += event.getQuantity();
+        deltas.statusChanged(OrderStatus.CREATED);
+    }
+
+    @EventHandler
+    public void on(OrderApprovedEvent event) {
+        currentDeltas().statusChanged(event.getOrderStatus());
+    }
+
+    @EventHandler
+    public void on(OrderRejectedEvent event) {
+        currentDeltas().statusChanged(event.getOrderStatus());
+    }
+
+    @ResetHandler
+    public void reset() {
+        productOrderStatisticsRepository.deleteAllInBatch();
+        orderStatusStatisticsRepository.deleteAllInBatch();
+        for (OrderStatus orderStatus : OrderStatus.values()) {
+            orderStatusStatisticsRepository.insertIfAbsent(orderStatus.name());
+        }
+    }
+
+    private Deltas currentDeltas() {
+        UnitOfWork<?> unitOfWork = CurrentUnitOfWork.get().root();
+        return unitOfWork.getOrComputeResource(DELTAS_RESOURCE, key -> {
+            Deltas deltas = new Deltas();
+            unitOfWork.onPrepareCommit(u -> flush(deltas));
+            return deltas;
+        });
+    }
+
+    private void flush(Deltas deltas) {
+        deltas.products.forEach((productId, counter) -> {
+            if (productOrderStatisticsRepository.increment(productId, counter.orders, counter.quantity) == 0) {
+                productOrderStatisticsRepository.save(
+                        new ProductOrderStatisticsEntity(productId, counter.orders, counter.quantity));
+            }
+        });
+        deltas.statuses.forEach((orderStatus, counter) -> {
+            if (orderStatusStatisticsRepository.increment(orderStatus, counter.orders) == 0) {
+                throw new IllegalStateException("No statistics row for order status " + orderStatus);
+            }
+        });
+    }
+
+    private static class Deltas {
+
+        private final Map<String, Counter> products = new HashMap<>();
+
+        private final Map<OrderStatus, Counter> statuses = new EnumMap<>(OrderStatus.class);
+
+        void statusChanged(OrderStatus orderStatus) {
+            statuses.computeIfAbsent(orderStatus, status -> new Counter()).orders++;
+        }
+    }
+
+    private static class Counter {
+
+        private long orders;
+
+        private long quantity;
+    }
+
+}
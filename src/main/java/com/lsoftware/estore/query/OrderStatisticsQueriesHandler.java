@@ -0,0 +1,75 @@
+package com.lsoftware.estore.query;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.axonframework.queryhandling.QueryHandler;
+import org.springframework.stereotype.Component;
+
+import com.lsoftware.estore.core.data.OrderStatusStatisticsEntity;
+import com.lsoftware.estore.core.data.OrderStatusStatisticsRepository;
+import com.lsoftware.estore.core.data.ProductOrderStatisticsRepository;
+import com.lsoftware.estore.core.model.OrderStatistics;
+import com.lsoftware.estore.core.model.OrderStatus;
+import com.lsoftware.estore.core.model.OrderStatusCounts;
+import com.lsoftware.estore.core.model.ProductOrderStatistics;
+
+@Component
+public class OrderStatisticsQueriesHandler {
+	
+	private final ProductOrderStatisticsRepository productOrderStatisticsRepository;
+	
+	private final OrderStatusStatisticsRepository orderStatusStatisticsRepository;
+	
+	public OrderStatisticsQueriesHandler(ProductOrderStatisticsRepository productOrderStatisticsRepository,
+			OrderStatusStatisticsRepository orderStatusStatisticsRepository) {
+		this.productOrderStatisticsRepository = productOrderStatisticsRepository;
+		this.orderStatusStatisticsRepository = orderStatusStatisticsRepository;
+	}
+	
+	@QueryHandler
+	public OrderStatistics findOrderStatistics(FindOrderStatisticsQuery findOrderStatisticsQuery) {
+		Map<OrderStatus, Long> orders = ordersPerStatus();
+		long approved = orders.getOrDefault(OrderStatus.APPROVED, 0L);
+		long rejected = orders.getOrDefault(OrderStatus.REJECTED, 0L);
+		long completed = approved + rejected;
+		return new OrderStatistics(orders.getOrDefault(OrderStatus.CREATED, 0L), approved, rejected,
+				completed == 0 ? 0 : (double) approved / completed,
+				completed == 0 ? 0 : (double) rejected / completed);
+	}
+	
+	/**
+	 * Orders currently in each status, from the three status totals rather than a count over the
+	 * orders table, so the cost does not grow with the number of orders. The totals count every
+	 * order that reached a status: the orders still CREATED are those not approved or rejected yet.
+	 * Like the other statistics they follow order-statistics-group, which may lag order-group.
+	 */
+	@QueryHandler
+	public OrderStatusCounts countOrdersByStatus(CountOrdersByStatusQuery countOrdersByStatusQuery) {
+		Map<OrderStatus, Long> orders = ordersPerStatus();
+		long approved = orders.getOrDefault(OrderStatus.APPROVED, 0L);
+		long rejected = orders.getOrDefault(OrderStatus.REJECTED, 0L);
+		Map<OrderStatus, Long> counts = new EnumMap<>(OrderStatus.class);
+		counts.put(OrderStatus.CREATED, Math.max(0, orders.getOrDefault(OrderStatus.CREATED, 0L) - approved - rejected));
+		counts.put(OrderStatus.APPROVED, approved);
+		counts.put(OrderStatus.REJECTED, rejected);
+		return new OrderStatusCounts(counts);
+	}
+	
+	@QueryHandler
+	public ProductOrderStatistics findProductOrderStatistics(FindProductOrderStatisticsQuery findProductOrderStatisticsQuery) {
+		String productId = findProductOrderStatisticsQuery.getProductId();
+		return productOrderStatisticsRepository.findById(productId)
+				.map(statistics -> new ProductOrderStatistics(productId, statistics.getOrders(), statistics.getQuantity()))
+				.orElseGet(() -> new ProductOrderStatistics(productId, 0, 0));
+	}
+	
+	// At most one row per status
+	private Map<OrderStatus, Long> ordersPerStatus() {
+		return orderStatusStatisticsRepository.findAll().stream()
+				.collect(Collectors.toMap(OrderStatusStatisticsEntity::getOrderStatus, 
+						OrderStatusStatisticsEntity::getOrders));
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.lsoftware.estore.query;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.lsoftware.estore.core.data.OrderEntity;
+import com.lsoftware.estore.core.model.OrderSummary;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Bounded read-through cache of {@link OrderSummary} by orderId. {@link OrderQueriesHandler} reads
+ * through it and {@link OrderEventsHandler} refreshes it after each projection batch commits; only
+ * the projection overwrites an entry. While the projection is replaying the table holds half rebuilt
+ * rows, so read-through fills are skipped until every segment of the processor has ended its replay.
+ * Hits, misses and evictions are published as the {@code cache.*} metrics of cache "orders.summary".
+ */
+@Component
+public class OrderSummaryCache {
+
+	private final Cache<String, OrderSummary> cache;
+
+	// Advanced whenever a replay starts or ends, so that a fill read before that is not cached
+	private final AtomicLong generation = new AtomicLong();
+
+	// Segments of the projection still replaying; the replay is over once there are none
+	private final Set<Integer> replayingSegments = ConcurrentHashMap.newKeySet();
+
+	public OrderSummaryCache(MeterRegistry meterRegistry,
+			@Value("${orders.summary-cache.maximum-size:10000}") long maximumSize,
+			@Value("${orders.summary-cache.expire-after-write:10m}") Duration expireAfterWrite) {
+		this.cache = GuavaCacheMetrics.monitor(meterRegistry, CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(expireAfterWrite)
+				.recordStats()
+				.<String, OrderSummary>build(), "orders.summary");
+	}
+
+	public OrderSummary getIfPresent(String orderId) {
+		return cache.getIfPresent(orderId);
+	}
+
+	public void put(OrderEntity orderEntity) {
+		cache.put(orderEntity.getOrderId(), toOrderSummary(orderEntity));
+	}
+
+	/**
+	 * Taken before reading the row for a read-through fill and handed to
+	 * {@link #putIfAbsent(OrderEntity, long)}; negative while the projection is replaying.
+	 */
+	public long fillStamp() {
+		long stamp = generation.get();
+		return replayingSegments.isEmpty() ? stamp : -1;
+	}
+
+	/**
+	 * Read-through fill: keeps an entry the projection put in the meantime, since the row this
+	 * summary was read from may already be older, and caches nothing if a replay started or ended
+	 * since {@code fillStamp} was taken. Returns the summary to answer with.
+	 */
+	public OrderSummary putIfAbsent(OrderEntity orderEntity, long fillStamp) {
+		OrderSummary orderSummary = toOrderSummary(orderEntity);
+		if (fillStamp < 0 || fillStamp != generation.get()) {
+			return orderSummary;
+		}
+		OrderSummary cached = cache.asMap().putIfAbsent(orderEntity.getOrderId(), orderSummary);
+		if (cached != null) {
+			return cached;
+		}
+		if (fillStamp != generation.get()) {
+			cache.asMap().remove(orderEntity.getOrderId(), orderSummary);
+		}
+		return orderSummary;
+	}
+
+	/**
+	 * Called on reset with every segment of the processor, before any of them replays, and after
+	 * each replayed projection batch commits with the segment of that batch. Entries cached before
+	 * the replay started are dropped.
+	 */
+	public synchronized void replayStarted(Collection<Integer> segmentIds) {
+		boolean started = replayingSegments.isEmpty();
+		replayingSegments.addAll(segmentIds);
+		if (started && !replayingSegments.isEmpty()) {
+			generation.incrementAndGet();
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Called after each live projection batch commits: once the last replaying segment is live,
+	 * every entry cached while the table was being rebuilt is dropped.
+	 */
+	public void replayEnded(int segmentId) {
+		if (!replayingSegments.contains(segmentId)) {
+			return;
+		}
+		synchronized (this) {
+			if (replayingSegments.remove(segmentId) && replayingSegments.isEmpty()) {
+				generation.incrementAndGet();
+				cache.invalidateAll();
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	static OrderSummary toOrderSummary(OrderEntity orderEntity) {
+		return new OrderSummary(orderEntity.getOrderId(), orderEntity.getOrderStatus(), "");
+	}
+
+}
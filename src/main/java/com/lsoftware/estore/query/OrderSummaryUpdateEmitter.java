@@ -0,0 +1,208 @@
+package com.lsoftware.estore.query;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.axonframework.common.Registration;
+import org.axonframework.messaging.MessageDispatchInterceptor;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.axonframework.monitoring.MessageMonitor;
+import org.axonframework.queryhandling.GenericSubscriptionQueryUpdateMessage;
+import org.axonframework.queryhandling.QueryUpdateEmitter;
+import org.axonframework.queryhandling.SimpleQueryUpdateEmitter;
+import org.axonframework.queryhandling.SubscriptionQueryBackpressure;
+import org.axonframework.queryhandling.SubscriptionQueryMessage;
+import org.axonframework.queryhandling.SubscriptionQueryUpdateMessage;
+import org.axonframework.queryhandling.UpdateHandlerRegistration;
+
+import com.lsoftware.estore.core.model.OrderSummary;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * {@link QueryUpdateEmitter} that keeps the open {@link FindOrderQuery} subscriptions by orderId,
+ * so that {@link #emit(OrderSummary)} reaches the subscriptions of one order without testing a
+ * filter against every subscription on the node, as {@link SimpleQueryUpdateEmitter} does. Other
+ * subscription queries are left to a SimpleQueryUpdateEmitter; the filter based {@code emit} and
+ * {@code complete} methods still reach both, at the old cost.
+ * <p>
+ * Like SimpleQueryUpdateEmitter, updates emitted within a unit of work are sent once it commits.
+ */
+public class OrderSummaryUpdateEmitter implements QueryUpdateEmitter {
+
+	private final SimpleQueryUpdateEmitter delegate;
+
+	private final MessageMonitor<? super SubscriptionQueryUpdateMessage<?>> updateMessageMonitor;
+
+	private final ConcurrentMap<String, Set<Subscription>> subscriptionsByOrderId = new ConcurrentHashMap<>();
+
+	private final List<MessageDispatchInterceptor<? super SubscriptionQueryUpdateMessage<?>>> dispatchInterceptors =
+			new CopyOnWriteArrayList<>();
+
+	public OrderSummaryUpdateEmitter(MessageMonitor<? super SubscriptionQueryUpdateMessage<?>> updateMessageMonitor) {
+		this.delegate = SimpleQueryUpdateEmitter.builder().updateMessageMonitor(updateMessageMonitor).build();
+		this.updateMessageMonitor = updateMessageMonitor;
+	}
+
+	/**
+	 * Sends the summary to the FindOrderQuery subscriptions of its order.
+	 */
+	public void emit(OrderSummary orderSummary) {
+		SubscriptionQueryUpdateMessage<OrderSummary> update =
+				GenericSubscriptionQueryUpdateMessage.asUpdateMessage(orderSummary);
+		runOnAfterCommitOrNow(() -> {
+			Set<Subscription> subscriptions = subscriptionsByOrderId.get(orderSummary.getOrderId());
+			if (subscriptions != null) {
+				SubscriptionQueryUpdateMessage<?> intercepted = intercept(update);
+				subscriptions.forEach(subscription -> subscription.next(intercepted));
+			}
+		});
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <U> void emit(Predicate<SubscriptionQueryMessage<?, ?, U>> filter, SubscriptionQueryUpdateMessage<U> update) {
+		delegate.emit(filter, update);
+		runOnAfterCommitOrNow(() -> {
+			SubscriptionQueryUpdateMessage<?> intercepted = intercept(update);
+			forEachSubscription(subscription -> filter.test((SubscriptionQueryMessage<?, ?, U>) subscription.query),
+					subscription -> subscription.next(intercepted));
+		});
+	}
+
+	@Override
+	public void complete(Predicate<SubscriptionQueryMessage<?, ?, ?>> filter) {
+		delegate.complete(filter);
+		runOnAfterCommitOrNow(() -> forEachSubscription(subscription -> filter.test(subscription.query),
+				Subscription::complete));
+	}
+
+	@Override
+	public void completeExceptionally(Predicate<SubscriptionQueryMessage<?, ?, ?>> filter, Throwable cause) {
+		delegate.completeExceptionally(filter, cause);
+		runOnAfterCommitOrNow(() -> forEachSubscription(subscription -> filter.test(subscription.query),
+				subscription -> subscription.error(cause)));
+	}
+
+	@Override
+	public boolean queryUpdateHandlerRegistered(SubscriptionQueryMessage<?, ?, ?> query) {
+		if (!(query.getPayload() instanceof FindOrderQuery)) {
+			return delegate.queryUpdateHandlerRegistered(query);
+		}
+		Set<Subscription> subscriptions = subscriptionsByOrderId.get(((FindOrderQuery) query.getPayload()).getOrderId());
+		return subscriptions != null && subscriptions.stream()
+				.anyMatch(subscription -> subscription.query.getIdentifier().equals(query.getIdentifier()));
+	}
+
+	@Override
+	@SuppressWarnings({ "deprecation", "unchecked" })
+	public <U> UpdateHandlerRegistration<U> registerUpdateHandler(SubscriptionQueryMessage<?, ?, ?> query,
+			SubscriptionQueryBackpressure backpressure, int updateBufferSize) {
+		if (!(query.getPayload() instanceof FindOrderQuery)) {
+			return delegate.registerUpdateHandler(query, backpressure, updateBufferSize);
+		}
+		String orderId = ((FindOrderQuery) query.getPayload()).getOrderId();
+		Subscription subscription = new Subscription(query, updateBufferSize);
+		subscriptionsByOrderId.compute(orderId, (key, subscriptions) -> {
+			Set<Subscription> forOrder = subscriptions != null ? subscriptions : ConcurrentHashMap.newKeySet();
+			forOrder.add(subscription);
+			return forOrder;
+		});
+		Registration registration = () -> {
+			remove(orderId, subscription);
+			return true;
+		};
+		Flux<SubscriptionQueryUpdateMessage<U>> updates = subscription.sink.asFlux()
+				.map(update -> (SubscriptionQueryUpdateMessage<U>) update)
+				.doFinally(signal -> registration.cancel());
+		return new UpdateHandlerRegistration<>(registration, updates, subscription::complete);
+	}
+
+	@Override
+	public Set<SubscriptionQueryMessage<?, ?, ?>> activeSubscriptions() {
+		Set<SubscriptionQueryMessage<?, ?, ?>> active = new HashSet<>(delegate.activeSubscriptions());
+		forEachSubscription(subscription -> true, subscription -> active.add(subscription.query));
+		return active;
+	}
+
+	@Override
+	public Registration registerDispatchInterceptor(
+			MessageDispatchInterceptor<? super SubscriptionQueryUpdateMessage<?>> dispatchInterceptor) {
+		dispatchInterceptors.add(dispatchInterceptor);
+		Registration delegateRegistration = delegate.registerDispatchInterceptor(dispatchInterceptor);
+		return () -> {
+			delegateRegistration.cancel();
+			return dispatchInterceptors.remove(dispatchInterceptor);
+		};
+	}
+
+	private void remove(String orderId, Subscription subscription) {
+		subscriptionsByOrderId.computeIfPresent(orderId, (key, subscriptions) -> {
+			subscriptions.remove(subscription);
+			return subscriptions.isEmpty() ? null : subscriptions;
+		});
+	}
+
+	private void forEachSubscription(Predicate<Subscription> filter, Consumer<Subscription> action) {
+		subscriptionsByOrderId.values().forEach(subscriptions -> subscriptions.stream()
+				.filter(filter)
+				.forEach(action));
+	}
+
+	private SubscriptionQueryUpdateMessage<?> intercept(SubscriptionQueryUpdateMessage<?> update) {
+		SubscriptionQueryUpdateMessage<?> intercepted = update;
+		for (MessageDispatchInterceptor<? super SubscriptionQueryUpdateMessage<?>> interceptor : dispatchInterceptors) {
+			intercepted = (SubscriptionQueryUpdateMessage<?>) interceptor.handle(intercepted);
+		}
+		return intercepted;
+	}
+
+	private static void runOnAfterCommitOrNow(Runnable task) {
+		if (CurrentUnitOfWork.isStarted() && !CurrentUnitOfWork.get().phase().isAfter(UnitOfWork.Phase.COMMIT)) {
+			CurrentUnitOfWork.get().afterCommit(unitOfWork -> task.run());
+		} else {
+			task.run();
+		}
+	}
+
+	private class Subscription {
+
+		private final SubscriptionQueryMessage<?, ?, ?> query;
+
+		// Buffers updates emitted before the subscriber arrives, up to the requested buffer size
+		private final Sinks.Many<SubscriptionQueryUpdateMessage<?>> sink;
+
+		Subscription(SubscriptionQueryMessage<?, ?, ?> query, int updateBufferSize) {
+			this.query = query;
+			this.sink = Sinks.many().multicast().onBackpressureBuffer(updateBufferSize);
+		}
+
+		// The sink takes one signal at a time; updates of one order may come from several threads
+		synchronized void next(SubscriptionQueryUpdateMessage<?> update) {
+			MessageMonitor.MonitorCallback monitorCallback = updateMessageMonitor.onMessageIngested(update);
+			Sinks.EmitResult result = sink.tryEmitNext(update);
+			if (result.isSuccess()) {
+				monitorCallback.reportSuccess();
+			} else {
+				monitorCallback.reportFailure(new IllegalStateException("Update not delivered: " + result));
+			}
+		}
+
+		synchronized void complete() {
+			sink.tryEmitComplete();
+		}
+
+		synchronized void error(Throwable cause) {
+			sink.tryEmitError(cause);
+		}
+	}
+
+}
@@ -0,0 +1,12 @@
+package com.lsoftware.estore.query;
+
+import lombok.Value;
+
+@Value
+public class ProjectionLag {
+	private final String processorName;
+	private final int activeSegments;
+	private final long headPosition;
+	private final long eventsBehind;
+	private final long millisBehind;
+}
@@ -0,0 +1,86 @@
+package com.lsoftware.estore.query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.EventTrackerStatus;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.axonframework.eventhandling.TrackingToken;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measures how far a streaming event processor is behind the head of the event store, both in
+ * events (token positions) and in milliseconds (age of the event being handled). Both are those
+ * of the slowest segment: one segment stuck on a slow batch holds back the projection even while
+ * the others are at the head.
+ */
+@Component
+public class ProjectionLagMonitor {
+
+	private final EventProcessingConfiguration eventProcessingConfiguration;
+
+	private final EventStore eventStore;
+
+	// Per processor, the age of the event last handled by each segment
+	private final Map<String, Map<Integer, AtomicLong>> eventAgeMillis = new ConcurrentHashMap<>();
+
+	public ProjectionLagMonitor(EventProcessingConfiguration eventProcessingConfiguration, EventStore eventStore) {
+		this.eventProcessingConfiguration = eventProcessingConfiguration;
+		this.eventStore = eventStore;
+	}
+
+	/**
+	 * Interceptor to register on the processor; it records the age of every event it hands to the
+	 * projection.
+	 */
+	public MessageHandlerInterceptor<EventMessage<?>> eventAgeInterceptor(String processorName) {
+		Map<Integer, AtomicLong> ageBySegment = eventAgeMillis.computeIfAbsent(processorName,
+				name -> new ConcurrentHashMap<>());
+		// The TrackingEventProcessor puts the segment of the batch in the unit of work under this key
+		String segmentIdResource = "Processor[" + processorName + "]/SegmentId";
+		return (unitOfWork, interceptorChain) -> {
+			Integer segmentId = unitOfWork.getResource(segmentIdResource);
+			ageBySegment.computeIfAbsent(segmentId == null ? 0 : segmentId, id -> new AtomicLong())
+					.set(Duration.between(unitOfWork.getMessage().getTimestamp(), Instant.now()).toMillis());
+			return interceptorChain.proceed();
+		};
+	}
+
+	public Optional<ProjectionLag> lag(String processorName) {
+		return eventProcessingConfiguration.eventProcessor(processorName, StreamingEventProcessor.class)
+				.map(processor -> lag(processorName, processor.processingStatus()));
+	}
+
+	private ProjectionLag lag(String processorName, Map<Integer, EventTrackerStatus> processingStatus) {
+		TrackingToken headToken = eventStore.createHeadToken();
+		long headPosition = headToken == null ? -1 : headToken.position().orElse(-1);
+		// A segment without a token has not handled any event yet
+		long slowestPosition = processingStatus.values().stream()
+				.map(EventTrackerStatus::getCurrentPosition)
+				.mapToLong(position -> position.orElse(-1))
+				.min()
+				.orElse(-1);
+		long eventsBehind = Math.max(0, headPosition - slowestPosition);
+		// A segment at the head is not behind, whatever the age of the last event it handled
+		Map<Integer, AtomicLong> ageBySegment = eventAgeMillis.getOrDefault(processorName, Collections.emptyMap());
+		long millisBehind = processingStatus.entrySet().stream()
+				.filter(segment -> segment.getValue().getCurrentPosition().orElse(-1) < headPosition)
+				.map(segment -> ageBySegment.get(segment.getKey()))
+				.filter(Objects::nonNull)
+				.mapToLong(AtomicLong::get)
+				.max()
+				.orElse(0);
+		return new ProjectionLag(processorName, processingStatus.size(), headPosition, eventsBehind, millisBehind);
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.lsoftware.estore.query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.EventTrackerStatus;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.axonframework.eventhandling.TrackingToken;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds a projection from the start of the event store: the processor is stopped, its tokens
+ * are reset (which calls the {@code @ResetHandler}s of the processing group) and it is started
+ * again. Every segment replays on its own thread in batches of the processor's batch size, one
+ * transaction per batch; start the service with the {@code replay} profile for larger batches and
+ * more segments.
+ * <p>
+ * Progress is the position of the slowest segment against the head of the event store at the time
+ * the replay was started; the ETA assumes the average rate so far.
+ */
+@Component
+public class ProjectionReplayService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProjectionReplayService.class);
+
+	private final EventProcessingConfiguration eventProcessingConfiguration;
+
+	private final EventStore eventStore;
+
+	private final Map<String, Replay> replays = new ConcurrentHashMap<>();
+
+	public ProjectionReplayService(EventProcessingConfiguration eventProcessingConfiguration, EventStore eventStore) {
+		this.eventProcessingConfiguration = eventProcessingConfiguration;
+		this.eventStore = eventStore;
+	}
+
+	/**
+	 * @throws IllegalStateException when the processor's handlers do not support a reset
+	 */
+	public Optional<ReplayProgress> replay(String processorName) {
+		return processor(processorName).map(processor -> {
+			if (!processor.supportsReset()) {
+				throw new IllegalStateException("Event processor " + processorName + " does not support a reset");
+			}
+			processor.shutDown();
+			Replay replay = new Replay(Instant.now(), headPosition());
+			processor.resetTokens();
+			replays.put(processorName, replay);
+			processor.start();
+			LOGGER.info("Replaying event processor {} up to position {}", processorName, replay.targetPosition);
+			return progress(processorName, processor.processingStatus(), replay);
+		});
+	}
+
+	/**
+	 * Progress of the last replay started through {@link #replay(String)}, empty if there was none.
+	 */
+	public Optional<ReplayProgress> progress(String processorName) {
+		Replay replay = replays.get(processorName);
+		if (replay == null) {
+			return Optional.empty();
+		}
+		return processor(processorName).map(processor -> progress(processorName, processor.processingStatus(), replay));
+	}
+
+	private Optional<StreamingEventProcessor> processor(String processorName) {
+		return eventProcessingConfiguration.eventProcessor(processorName, StreamingEventProcessor.class);
+	}
+
+	private long headPosition() {
+		TrackingToken headToken = eventStore.createHeadToken();
+		return headToken == null ? -1 : headToken.position().orElse(-1);
+	}
+
+	private static ReplayProgress progress(String processorName, Map<Integer, EventTrackerStatus> processingStatus,
+			Replay replay) {
+		long position = processingStatus.values().stream()
+				.map(EventTrackerStatus::getCurrentPosition)
+				.mapToLong(currentPosition -> currentPosition.orElse(-1))
+				.min()
+				.orElse(-1);
+		// Segments are claimed shortly after the restart; until then nothing reports as replaying
+		boolean replaying = position < replay.targetPosition
+				&& (processingStatus.isEmpty()
+						|| processingStatus.values().stream().anyMatch(EventTrackerStatus::isReplaying));
+
+		long handled = Math.max(0, position + 1);
+		long elapsedMillis = Math.max(1, Duration.between(replay.startedAt, Instant.now()).toMillis());
+		long eventsPerSecond = handled * 1000 / elapsedMillis;
+		long remaining = Math.max(0, replay.targetPosition - position);
+		long etaSeconds = !replaying ? 0 : eventsPerSecond == 0 ? -1 : remaining / eventsPerSecond;
+		double percentComplete = replay.targetPosition <= 0 ? 100
+				: Math.min(100, 100d * handled / (replay.targetPosition + 1));
+
+		return new ReplayProgress(processorName, replaying, processingStatus.size(), replay.startedAt, position,
+				replay.targetPosition, percentComplete, eventsPerSecond, etaSeconds);
+	}
+
+	private static class Replay {
+
+		private final Instant startedAt;
+
+		private final long targetPosition;
+
+		Replay(Instant startedAt, long targetPosition) {
+			this.startedAt = startedAt;
+			this.targetPosition = targetPosition;
+		}
+	}
+
+}
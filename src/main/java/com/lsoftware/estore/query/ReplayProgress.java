@@ -0,0 +1,19 @@
+package com.lsoftware.estore.query;
+
+import java.time.Instant;
+
+import lombok.Value;
+
+@Value
+public class ReplayProgress {
+	private final String processorName;
+	private final boolean replaying;
+	private final int activeSegments;
+	private final Instant startedAt;
+	private final long position;
+	private final long targetPosition;
+	private final double percentComplete;
+	private final long eventsPerSecond;
+	// -1 until the rate is known
+	private final long etaSeconds;
+}
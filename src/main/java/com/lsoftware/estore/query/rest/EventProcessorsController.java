@@ -0,0 +1,62 @@
+package com.lsoftware.estore.query.rest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.lsoftware.estore.query.ProjectionLag;
+import com.lsoftware.estore.query.ProjectionLagMonitor;
+import com.lsoftware.estore.query.ProjectionReplayService;
+import com.lsoftware.estore.query.ReplayProgress;
+
+@RestController
+@RequestMapping("/management")
+public class EventProcessorsController {
+
+    private final ProjectionLagMonitor projectionLagMonitor;
+
+    private final ProjectionReplayService projectionReplayService;
+
+    @Autowired
+    public EventProcessorsController(ProjectionLagMonitor projectionLagMonitor,
+            ProjectionReplayService projectionReplayService) {
+        this.projectionLagMonitor = projectionLagMonitor;
+        this.projectionReplayService = projectionReplayService;
+    }
+
+    @GetMapping("/eventProcessor/{processorName}/lag")
+    public ResponseEntity<ProjectionLag> lag(@PathVariable String processorName) {
+        return projectionLagMonitor.lag(processorName)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Clears the processor's projection and rebuilds it from the first event. Answers 202 right
+     * away; follow the rebuild with GET on the same path.
+     */
+    @PostMapping("/eventProcessor/{processorName}/replay")
+    public ResponseEntity<ReplayProgress> replay(@PathVariable String processorName) {
+        try {
+            return projectionReplayService.replay(processorName)
+                    .map(progress -> ResponseEntity.accepted().body(progress))
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping("/eventProcessor/{processorName}/replay")
+    public ResponseEntity<ReplayProgress> replayProgress(@PathVariable String processorName) {
+        return projectionReplayService.progress(processorName)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.lsoftware.estore.query.rest;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.axonframework.messaging.responsetypes.ResponseTypes;
+import org.axonframework.queryhandling.QueryGateway;
+import org.axonframework.queryhandling.SubscriptionQueryResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.lsoftware.estore.core.model.OrderStatistics;
+import com.lsoftware.estore.core.model.OrderStatus;
+import com.lsoftware.estore.core.model.OrderStatusCounts;
+import com.lsoftware.estore.core.model.OrderSummary;
+import com.lsoftware.estore.core.model.OrderSummaryPage;
+import com.lsoftware.estore.core.model.ProductOrderStatistics;
+import com.lsoftware.estore.query.CountOrdersByStatusQuery;
+import com.lsoftware.estore.query.FindOrderQuery;
+import com.lsoftware.estore.query.FindOrderStatisticsQuery;
+import com.lsoftware.estore.query.FindOrdersQuery;
+import com.lsoftware.estore.query.FindProductOrderStatisticsQuery;
+
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/orders")
+public class OrdersQueryController {
+
+    private final QueryGateway queryGateway;
+
+    private final Duration updatesMaxDuration;
+
+    private final int updatesMaxOrders;
+
+    private final int listMaxLimit;
+
+    @Autowired
+    public OrdersQueryController(QueryGateway queryGateway,
+            @Value("${orders.updates.max-duration:10m}") Duration updatesMaxDuration,
+            @Value("${orders.updates.max-orders:100}") int updatesMaxOrders,
+            @Value("${orders.list.max-limit:100}") int listMaxLimit) {
+        this.queryGateway = queryGateway;
+        this.updatesMaxDuration = updatesMaxDuration;
+        this.updatesMaxOrders = updatesMaxOrders;
+        this.listMaxLimit = listMaxLimit;
+    }
+
+    /**
+     * Orders of one user, one product or in one status, ordered by orderId. Pass the
+     * {@code nextCursor} of a page as {@code after} to get the next one.
+     */
+    @GetMapping
+    public CompletableFuture<OrderSummaryPage> getOrders(@RequestParam(required = false) String userId,
+            @RequestParam(required = false) String productId,
+            @RequestParam(required = false) OrderStatus orderStatus,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int limit) {
+        long filters = Stream.of(userId, productId, orderStatus).filter(Objects::nonNull).count();
+        if (filters != 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Exactly one of userId, productId or orderStatus is required");
+        }
+        if (limit < 1 || limit > listMaxLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + listMaxLimit);
+        }
+        return queryGateway.query(new FindOrdersQuery(userId, productId, orderStatus, after, limit),
+                ResponseTypes.instanceOf(OrderSummaryPage.class));
+    }
+
+    @GetMapping("/counts")
+    public CompletableFuture<OrderStatusCounts> getOrderCounts() {
+        return queryGateway.query(new CountOrdersByStatusQuery(), ResponseTypes.instanceOf(OrderStatusCounts.class));
+    }
+
+    /**
+     * Running totals kept by the order-statistics-group projection, so they cost a primary key
+     * lookup rather than an aggregate over the orders table.
+     */
+    @GetMapping("/statistics")
+    public CompletableFuture<OrderStatistics> getOrderStatistics() {
+        return queryGateway.query(new FindOrderStatisticsQuery(), ResponseTypes.instanceOf(OrderStatistics.class));
+    }
+
+    @GetMapping("/statistics/products/{productId}")
+    public CompletableFuture<ProductOrderStatistics> getProductOrderStatistics(@PathVariable String productId) {
+        return queryGateway.query(new FindProductOrderStatisticsQuery(productId),
+                ResponseTypes.instanceOf(ProductOrderStatistics.class));
+    }
+
+    @GetMapping("/{orderId}")
+    public CompletableFuture<ResponseEntity<OrderSummary>> getOrder(@PathVariable String orderId) {
+        return queryGateway.query(new FindOrderQuery(orderId), ResponseTypes.instanceOf(OrderSummary.class))
+                .thenApply(orderSummary -> orderSummary == null
+                        ? ResponseEntity.notFound().<OrderSummary>build()
+                        : ResponseEntity.ok(orderSummary));
+    }
+
+    /**
+     * Server-Sent Events stream of one order: its current summary followed by every status
+     * transition. The stream completes once the order is approved or rejected.
+     */
+    @GetMapping(path = "/{orderId}/updates", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<OrderSummary> orderUpdates(@PathVariable String orderId) {
+        return orderSummaryStream(orderId);
+    }
+
+    /**
+     * Same as {@link #orderUpdates(String)} for a set of orders, merged into one stream.
+     */
+    @GetMapping(path = "/updates", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<OrderSummary> ordersUpdates(@RequestParam List<String> orderIds) {
+        Set<String> distinctOrderIds = new LinkedHashSet<>(orderIds);
+        if (distinctOrderIds.size() > updatesMaxOrders) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "No more than " + updatesMaxOrders + " orders can be followed at once");
+        }
+        return Flux.merge(Flux.fromIterable(distinctOrderIds).map(this::orderSummaryStream));
+    }
+
+    /**
+     * Backed by a FindOrderQuery subscription query, so updates arrive through the same
+     * QueryUpdateEmitter path the saga already uses. Idle subscribers hold no thread, only the
+     * subscription and the async request; a slow client only ever sees the latest summary and the
+     * subscription is closed as soon as the stream ends.
+     */
+    private Flux<OrderSummary> orderSummaryStream(String orderId) {
+        return Flux.using(
+                () -> subscribeToOrderSummary(orderId),
+                queryResult -> queryResult.initialResult()
+                        .concatWith(queryResult.updates())
+                        .takeUntil(orderSummary -> orderSummary.getOrderStatus() != OrderStatus.CREATED)
+                        .take(updatesMaxDuration)
+                        .onBackpressureLatest(),
+                SubscriptionQueryResult::close);
+    }
+
+    private SubscriptionQueryResult<OrderSummary, OrderSummary> subscribeToOrderSummary(String orderId) {
+        return queryGateway.subscriptionQuery(new FindOrderQuery(orderId),
+                ResponseTypes.instanceOf(OrderSummary.class),
+                ResponseTypes.instanceOf(OrderSummary.class));
+    }
+
+}
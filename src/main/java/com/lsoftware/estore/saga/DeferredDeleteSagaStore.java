@@ -0,0 +1,64 @@
+package com.lsoftware.estore.saga;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+import org.axonframework.modelling.saga.AssociationValue;
+import org.axonframework.modelling.saga.AssociationValues;
+import org.axonframework.modelling.saga.repository.SagaStore;
+
+/**
+ * Saga store that hands ended sagas to {@link EndedSagaDeleter} instead of deleting them one by
+ * one, and treats them as deleted while they wait for their batch. A saga is handed over once the
+ * unit of work that ended it commits; if that rolls back the saga stays, as it would in the store.
+ */
+public class DeferredDeleteSagaStore implements SagaStore<Object> {
+
+	private final SagaStore<Object> delegate;
+
+	private final EndedSagaDeleter endedSagaDeleter;
+
+	public DeferredDeleteSagaStore(SagaStore<Object> delegate, EndedSagaDeleter endedSagaDeleter) {
+		this.delegate = delegate;
+		this.endedSagaDeleter = endedSagaDeleter;
+	}
+
+	@Override
+	public Set<String> findSagas(Class<?> sagaType, AssociationValue associationValue) {
+		Set<String> sagaIds = delegate.findSagas(sagaType, associationValue);
+		if (sagaIds.isEmpty() || !endedSagaDeleter.hasPending()) {
+			return sagaIds;
+		}
+		return sagaIds.stream()
+				.filter(sagaId -> !endedSagaDeleter.isPending(sagaId))
+				.collect(Collectors.toSet());
+	}
+
+	@Override
+	public <S> Entry<S> loadSaga(Class<S> sagaType, String sagaIdentifier) {
+		return endedSagaDeleter.isPending(sagaIdentifier) ? null : delegate.loadSaga(sagaType, sagaIdentifier);
+	}
+
+	@Override
+	public void deleteSaga(Class<?> sagaType, String sagaIdentifier, Set<AssociationValue> associationValues) {
+		if (CurrentUnitOfWork.isStarted()) {
+			CurrentUnitOfWork.get().afterCommit(unitOfWork -> endedSagaDeleter.delete(sagaIdentifier));
+		} else {
+			endedSagaDeleter.delete(sagaIdentifier);
+		}
+	}
+
+	@Override
+	public void insertSaga(Class<?> sagaType, String sagaIdentifier, Object saga,
+			Set<AssociationValue> associationValues) {
+		delegate.insertSaga(sagaType, sagaIdentifier, saga, associationValues);
+	}
+
+	@Override
+	public void updateSaga(Class<?> sagaType, String sagaIdentifier, Object saga,
+			AssociationValues associationValues) {
+		delegate.updateSaga(sagaType, sagaIdentifier, saga, associationValues);
+	}
+
+}
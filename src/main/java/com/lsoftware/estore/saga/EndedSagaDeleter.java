@@ -0,0 +1,94 @@
+package com.lsoftware.estore.saga;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+
+import org.axonframework.common.jpa.EntityManagerProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Deletes ended sagas from the JPA saga store in batches: two {@code DELETE ... WHERE sagaId IN}
+ * statements per batch instead of two statements for every ended saga in the event processor's
+ * transaction. Until the batch is written {@link DeferredDeleteSagaStore} hides the pending sagas.
+ * <p>
+ * If the node stops before a batch is written the sagas stay in the store. They have ended, so no
+ * further events are expected for them.
+ */
+@Component
+public class EndedSagaDeleter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EndedSagaDeleter.class);
+
+	private final Set<String> pendingSagaIds = ConcurrentHashMap.newKeySet();
+
+	private final EntityManagerProvider entityManagerProvider;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int batchSize;
+
+	public EndedSagaDeleter(EntityManagerProvider entityManagerProvider, PlatformTransactionManager transactionManager,
+			@Value("${orders.saga-store.delete-batch-size:500}") int batchSize) {
+		this.entityManagerProvider = entityManagerProvider;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+	}
+
+	public void delete(String sagaId) {
+		pendingSagaIds.add(sagaId);
+	}
+
+	public boolean isPending(String sagaId) {
+		return pendingSagaIds.contains(sagaId);
+	}
+
+	public boolean hasPending() {
+		return !pendingSagaIds.isEmpty();
+	}
+
+	@PreDestroy
+	@Scheduled(fixedDelayString = "${orders.saga-store.delete-interval-ms:1000}")
+	public void deleteEndedSagas() {
+		List<String> batch = new ArrayList<>(batchSize);
+		for (String sagaId : pendingSagaIds) {
+			batch.add(sagaId);
+			if (batch.size() == batchSize) {
+				deleteBatch(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			deleteBatch(batch);
+		}
+	}
+
+	private void deleteBatch(List<String> sagaIds) {
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				EntityManager entityManager = entityManagerProvider.getEntityManager();
+				entityManager.createQuery("DELETE FROM AssociationValueEntry ae WHERE ae.sagaId IN :sagaIds")
+						.setParameter("sagaIds", sagaIds)
+						.executeUpdate();
+				entityManager.createQuery("DELETE FROM SagaEntry se WHERE se.sagaId IN :sagaIds")
+						.setParameter("sagaIds", sagaIds)
+						.executeUpdate();
+			});
+			pendingSagaIds.removeAll(sagaIds);
+		} catch (RuntimeException e) {
+			// Kept pending, the next run tries again
+			LOGGER.warn("Could not delete " + sagaIds.size() + " ended sagas", e);
+		}
+	}
+
+}
@@ -1,8 +1,11 @@
 package com.lsoftware.estore.saga;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 import org.axonframework.commandhandling.CommandCallback;
@@ -11,13 +14,11 @@ import org.axonframework.commandhandling.CommandResultMessage;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.axonframework.deadline.DeadlineManager;
 import org.axonframework.deadline.annotation.DeadlineHandler;
-import org.axonframework.messaging.responsetypes.ResponseTypes;
+import org.axonframework.eventhandling.Timestamp;
 import org.axonframework.modelling.saga.EndSaga;
 import org.axonframework.modelling.saga.SagaEventHandler;
 import org.axonframework.modelling.saga.SagaLifecycle;
 import org.axonframework.modelling.saga.StartSaga;
-import org.axonframework.queryhandling.QueryGateway;
-import org.axonframework.queryhandling.QueryUpdateEmitter;
 import org.axonframework.spring.stereotype.Saga;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,8 +29,9 @@ import com.lsoftware.estore.command.commands.RejectOrderCommand;
 import com.lsoftware.estore.core.events.OrderApprovedEvent;
 import com.lsoftware.estore.core.events.OrderCreatedEvent;
 import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.metrics.OrderMetrics;
 import com.lsoftware.estore.core.model.OrderSummary;
-import com.lsoftware.estore.query.FindOrderQuery;
+import com.lsoftware.estore.query.OrderSummaryUpdateEmitter;
 import com.lsoftware.estore.shared.core.commands.CancelProductReservationCommand;
 import com.lsoftware.estore.shared.core.commands.ProcessPaymentCommand;
 import com.lsoftware.estore.shared.core.commands.ReserveProductCommand;
@@ -37,7 +39,8 @@ import com.lsoftware.estore.shared.core.events.PaymentProcessedEvent;
 import com.lsoftware.estore.shared.core.events.ProductReservationCancelledEvent;
 import com.lsoftware.estore.shared.core.events.ProductReservedEvent;
 import com.lsoftware.estore.shared.core.model.User;
-import com.lsoftware.estore.shared.core.query.FetchUserPaymentDetailsQuery;
+
+import io.micrometer.core.instrument.Timer;
 
 @Saga
 public class OrderSaga {
@@ -48,21 +51,30 @@ public class OrderSaga {
 	private transient CommandGateway commandGateway;
 	
 	@Autowired
-	private transient QueryGateway queryGateway;
+	private transient UserPaymentDetailsLoader userPaymentDetailsLoader;
 	
 	@Autowired
 	private transient DeadlineManager deadlineManager;
 	
 	@Autowired
-	private transient QueryUpdateEmitter queryUpdateEmitter;
+	private transient OrderSummaryUpdateEmitter queryUpdateEmitter;
+	
+	@Autowired
+	private transient OrderMetrics orderMetrics;
 	
 	private final String PAYMENT_PROCESSING_TIMEOUT_DEADLINE = "payment-processing-deadline";
 	
+	private static final long PAYMENT_PROCESSING_TIMEOUT_SECONDS = 10;
+	
 	private String scheduleId;
 	
+	private Instant orderCreatedAt;
+	
 	@StartSaga
 	@SagaEventHandler(associationProperty = "orderId")
-	public void handle(OrderCreatedEvent orderCreatedEvent) {
+	public void handle(OrderCreatedEvent orderCreatedEvent, @Timestamp Instant orderCreatedAt) {
+		this.orderCreatedAt = orderCreatedAt;
+		
 		ReserveProductCommand reserveProductCommand = ReserveProductCommand.builder()
 				.orderId(orderCreatedEvent.getOrderId())
 				.productId(orderCreatedEvent.getProductId())
@@ -73,17 +85,20 @@ public class OrderSaga {
 		LOGGER.info("OrderCreatedEvent handled for orderId: " + reserveProductCommand.getOrderId() + 
 				" and productId" + reserveProductCommand.getProductId());
 		
+		Timer.Sample reserveProductSample = orderMetrics.startTimer();
 		commandGateway.send(reserveProductCommand, new CommandCallback<ReserveProductCommand, Object>() {
 
 			@Override
 			public void onResult(CommandMessage<? extends ReserveProductCommand> commandMessage,
 					CommandResultMessage<? extends Object> commandResultMessage) {
+				orderMetrics.recordSagaStep(reserveProductSample, "reserve-product", 
+						commandResultMessage.isExceptional() ? OrderMetrics.FAILURE : OrderMetrics.SUCCESS);
 				
 				if (commandResultMessage.isExceptional()) {
 					// Start a compensating transaction
 					RejectOrderCommand rejectOrderCommand = new RejectOrderCommand(orderCreatedEvent.getOrderId(),
 							commandResultMessage.exceptionResult().getMessage());
-					commandGateway.send(rejectOrderCommand);
+					orderMetrics.timeSagaStep("reject-order", commandGateway.send(rejectOrderCommand));
 				}
 				
 			}
@@ -98,35 +113,36 @@ public class OrderSaga {
 				" and orderId" + productReservedEvent.getOrderId());
 		LOGGER.info("Processing payment....");
 		
-		FetchUserPaymentDetailsQuery fetchUserPaymentDetailsQuery = 
-				new FetchUserPaymentDetailsQuery(productReservedEvent.getUserId());
-		
-		User userPaymentDetails = null;
-		
-		try {
-			userPaymentDetails = queryGateway
-					.query(fetchUserPaymentDetailsQuery, ResponseTypes.instanceOf(User.class))
-					.join();
-		} catch (Exception e) {
-			LOGGER.error(e.getMessage());
-			// Start a compensating transaction
-			cancelProductReservation(productReservedEvent, e.getMessage());
-			return;
-		}
+		// Scheduled before the remote calls so the saga state is persisted with it; the deadline
+		// also covers a user service that never answers.
+		scheduleId = deadlineManager.schedule(Duration.of(60, ChronoUnit.SECONDS), 
+				PAYMENT_PROCESSING_TIMEOUT_DEADLINE, productReservedEvent);
 		
+		// Both remote steps are composed instead of joined, so a slow payment service does not
+		// hold the event processor thread. Compensations run in the completion callback.
+		orderMetrics.timeSagaStep("fetch-payment-details", 
+				userPaymentDetailsLoader.load(productReservedEvent.getUserId()))
+				.thenCompose(userPaymentDetails -> processPayment(productReservedEvent, userPaymentDetails))
+				.whenComplete((result, exception) -> {
+					if (exception != null) {
+						String reason = failureReason(exception);
+						LOGGER.error(reason);
+						// Start a compensating transaction
+						cancelProductReservation(productReservedEvent, reason);
+					} else if (result == null) {
+						LOGGER.info("The ProcessPaymentCommand resulted in NULL. Initiating a compansation transaction");
+						// Start a compensating transaction
+						cancelProductReservation(productReservedEvent, "Could not proccess user payment with provided payment");
+					}
+				});
+	}
+	
+	private CompletableFuture<String> processPayment(ProductReservedEvent productReservedEvent, User userPaymentDetails) {
 		if (userPaymentDetails == null) {
-			// Start a compensating transaction
-			cancelProductReservation(productReservedEvent, "Could not fetch user payment details");
-			return;
+			throw new IllegalStateException("Could not fetch user payment details");
 		}
 		
 		LOGGER.info("Successfully fetched user payment details for user: " + userPaymentDetails.getFirstName()); 
-	
-		
-		scheduleId = deadlineManager.schedule(Duration.of(60, ChronoUnit.SECONDS), 
-				PAYMENT_PROCESSING_TIMEOUT_DEADLINE, productReservedEvent);
-		
-		//if(true) return;
 		
 		ProcessPaymentCommand processPaymentCommand = ProcessPaymentCommand
 				.builder()
@@ -135,23 +151,14 @@ public class OrderSaga {
 				.paymentId(UUID.randomUUID().toString())
 				.build();
 		
-		String result = null;
-		boolean compensated = false;
-		try {
-			result = commandGateway.sendAndWait(processPaymentCommand, 10, TimeUnit.SECONDS);
-		} catch (Exception e) {
-			LOGGER.error(e.getMessage());
-			// Start a compensating transaction
-			compensated = true;
-			cancelProductReservation(productReservedEvent, e.getMessage());
-		}
-		
-		if (!compensated && result == null) {
-			LOGGER.info("The ProcessPaymentCommand resulted in NULL. Initiating a compansation transaction");
-			// Start a compensating transaction
-			cancelProductReservation(productReservedEvent, "Could not proccess user payment with provided payment");
-		}
-		
+		return orderMetrics.timeSagaStep("process-payment", commandGateway.<String>send(processPaymentCommand)
+				.orTimeout(PAYMENT_PROCESSING_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+	
+	private static String failureReason(Throwable exception) {
+		Throwable cause = exception instanceof CompletionException && exception.getCause() != null 
+				? exception.getCause() : exception;
+		return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
 	}
 	
 	
@@ -167,7 +174,7 @@ public class OrderSaga {
 				.reason(reason)
 				.build();
 	
-		commandGateway.send(cancelProductReservationCommand);
+		orderMetrics.timeSagaStep("cancel-product-reservation", commandGateway.send(cancelProductReservationCommand));
 	}
 	
 	
@@ -179,7 +186,7 @@ public class OrderSaga {
 		
 		// Publish a ApproveOrderCommand
 		ApproveOrderCommand approveOrderCommand = new ApproveOrderCommand(paymentProcessedEvent.getOrderId());
-		commandGateway.send(approveOrderCommand);
+		orderMetrics.timeSagaStep("approve-order", commandGateway.send(approveOrderCommand));
 	}
 	
 	private void cancelDeadline() {
@@ -194,9 +201,9 @@ public class OrderSaga {
 	public void handle(OrderApprovedEvent orderApprovedEvent) {
 		LOGGER.info("Order is approved. Order saga is completed for orderId: " + orderApprovedEvent);
 		//SagaLifecycle.end();
-		queryUpdateEmitter.emit(FindOrderQuery.class, query -> true,
-				new OrderSummary(orderApprovedEvent.getOrderId(), 
-						orderApprovedEvent.getOrderStatus(), ""));
+		orderMetrics.recordSagaCompleted(orderCreatedAt, orderApprovedEvent.getOrderStatus());
+		emitOrderSummary(new OrderSummary(orderApprovedEvent.getOrderId(), 
+				orderApprovedEvent.getOrderStatus(), ""));
 	}
 	
 	
@@ -205,7 +212,7 @@ public class OrderSaga {
 		// Create and send a RejectOrderCommand
 		RejectOrderCommand rejectOrderCommand = new RejectOrderCommand(productReservationCancelledEvent.getOrderId(),
 				productReservationCancelledEvent.getReason());
-		commandGateway.send(rejectOrderCommand);
+		orderMetrics.timeSagaStep("reject-order", commandGateway.send(rejectOrderCommand));
 	}
 	
 	@EndSaga
@@ -213,9 +220,17 @@ public class OrderSaga {
 	public void handle(OrderRejectedEvent orderRejectedEvent) {
 		LOGGER.info("Successfully rejected order with id: " + orderRejectedEvent.getOrderId());
 		//SagaLifecycle.end();
-		queryUpdateEmitter.emit(FindOrderQuery.class, query -> true,
-				new OrderSummary(orderRejectedEvent.getOrderId(), 
-						orderRejectedEvent.getOrderStatus(), orderRejectedEvent.getReason()));
+		orderMetrics.recordSagaCompleted(orderCreatedAt, orderRejectedEvent.getOrderStatus());
+		emitOrderSummary(new OrderSummary(orderRejectedEvent.getOrderId(), 
+				orderRejectedEvent.getOrderStatus(), orderRejectedEvent.getReason()));
+	}
+	
+	/**
+	 * Only the subscriptions opened for this order receive the summary; they are looked up by
+	 * orderId instead of testing every open FindOrderQuery on the node.
+	 */
+	private void emitOrderSummary(OrderSummary orderSummary) {
+		queryUpdateEmitter.emit(orderSummary);
 	}
 	
 	
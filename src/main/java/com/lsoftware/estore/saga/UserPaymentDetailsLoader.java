@@ -0,0 +1,91 @@
+package com.lsoftware.estore.saga;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.axonframework.messaging.responsetypes.ResponseTypes;
+import org.axonframework.queryhandling.QueryGateway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.lsoftware.estore.shared.core.model.User;
+import com.lsoftware.estore.shared.core.query.FetchUserPaymentDetailsQuery;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Payment details lookups of {@link OrderSaga}. Sagas asking for the same user while a
+ * FetchUserPaymentDetailsQuery for that user is under way share its answer instead of sending their
+ * own, and answers are kept for a few seconds, so a burst of orders from one user costs one round
+ * trip to the users service.
+ * <p>
+ * Shared lookups are counted as {@code orders.user-payment-details.coalesced}; cache hits are the
+ * {@code cache.*} metrics of cache "orders.user-payment-details".
+ */
+@Component
+public class UserPaymentDetailsLoader {
+
+	private final QueryGateway queryGateway;
+
+	private final Cache<String, User> recentUsers;
+
+	private final Map<String, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+
+	private final Counter coalesced;
+
+	public UserPaymentDetailsLoader(QueryGateway queryGateway, MeterRegistry meterRegistry,
+			@Value("${orders.user-payment-details.cache-ttl:5s}") Duration cacheTtl,
+			@Value("${orders.user-payment-details.cache-size:10000}") long cacheSize) {
+		this.queryGateway = queryGateway;
+		this.recentUsers = GuavaCacheMetrics.monitor(meterRegistry, CacheBuilder.newBuilder()
+				.maximumSize(cacheSize)
+				.expireAfterWrite(cacheTtl)
+				.recordStats()
+				.<String, User>build(), "orders.user-payment-details");
+		this.coalesced = meterRegistry.counter("orders.user-payment-details.coalesced");
+	}
+
+	public CompletableFuture<User> load(String userId) {
+		User user = recentUsers.getIfPresent(userId);
+		if (user != null) {
+			return CompletableFuture.completedFuture(user);
+		}
+
+		CompletableFuture<User> lookup = new CompletableFuture<>();
+		CompletableFuture<User> pending = inFlight.putIfAbsent(userId, lookup);
+		if (pending != null) {
+			coalesced.increment();
+			return pending;
+		}
+
+		CompletableFuture<User> query;
+		try {
+			query = queryGateway.query(new FetchUserPaymentDetailsQuery(userId), ResponseTypes.instanceOf(User.class));
+		} catch (RuntimeException e) {
+			// Thrown before a future exists; callers that joined this lookup must not wait forever
+			inFlight.remove(userId, lookup);
+			lookup.completeExceptionally(e);
+			return lookup;
+		}
+		query.whenComplete((result, exception) -> {
+			// Cached before the lookup is dropped, so no caller in between sends a second query
+			if (exception == null && result != null) {
+				recentUsers.put(userId, result);
+			}
+			inFlight.remove(userId, lookup);
+			if (exception != null) {
+				lookup.completeExceptionally(exception);
+			} else {
+				lookup.complete(result);
+			}
+		});
+		return lookup;
+	}
+
+}
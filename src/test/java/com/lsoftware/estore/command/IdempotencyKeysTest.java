@@ -0,0 +1,156 @@
+package com.lsoftware.estore.command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lsoftware.estore.core.data.IdempotencyKeyEntity;
+import com.lsoftware.estore.core.data.IdempotencyKeysRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link IdempotencyKeys#claim(String, String)} racing on the same key. The claims of each test are
+ * submitted together, so with group commit they end up in one batch.
+ */
+@DataJpaTest
+// Each claim commits on its own, as it does in the service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyKeysTest {
+
+	@Configuration
+	@EntityScan(basePackageClasses = IdempotencyKeyEntity.class)
+	@EnableJpaRepositories(basePackageClasses = IdempotencyKeysRepository.class)
+	static class IdempotencyKeysConfiguration {
+	}
+
+	@Autowired
+	private IdempotencyKeysRepository idempotencyKeysRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private IdempotencyKeys idempotencyKeys;
+
+	@BeforeEach
+	void setUp() {
+		idempotencyKeys = idempotencyKeys(true);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		idempotencyKeys.close();
+		idempotencyKeysRepository.deleteAllInBatch();
+	}
+
+	@Test
+	void sameKeyTwiceInOneBatchIsClaimedOnce() {
+		List<Optional<String>> claims = claimTogether(new String[][] {
+				{ "retried-key", "order-1" },
+				{ "retried-key", "order-2" } });
+
+		String storedOrderId = idempotencyKeysRepository.findById("retried-key").get().getOrderId();
+		assertEquals(1, claims.stream().filter(Optional::isEmpty).count(), "one request creates the order");
+		assertTrue(claims.contains(Optional.of(storedOrderId)), "the other one gets that order back");
+	}
+
+	@Test
+	void keyStoredMeanwhileIsNotOverwrittenWhenTheBatchIsRetried() {
+		// Stored after the bloom filter was loaded, so the claim goes straight to the insert
+		idempotencyKeysRepository.saveAndFlush(new IdempotencyKeyEntity("existing-key", "order-1", Instant.now()));
+
+		List<Optional<String>> claims = claimTogether(new String[][] {
+				{ "existing-key", "order-2" },
+				{ "new-key", "order-3" } });
+
+		assertEquals(Optional.of("order-1"), claims.get(0));
+		assertEquals(Optional.empty(), claims.get(1));
+		assertEquals("order-1", idempotencyKeysRepository.findById("existing-key").get().getOrderId());
+		assertEquals("order-3", idempotencyKeysRepository.findById("new-key").get().getOrderId());
+	}
+
+	@Test
+	void concurrentClaimsOfOneKeyWithoutGroupCommitCreateOneOrder() throws InterruptedException {
+		idempotencyKeys.close();
+		idempotencyKeys = idempotencyKeys(false);
+		String[][] keysAndOrderIds = new String[8][];
+		for (int i = 0; i < keysAndOrderIds.length; i++) {
+			keysAndOrderIds[i] = new String[] { "raced-key", "order-" + i };
+		}
+
+		List<Optional<String>> claims = claimTogether(keysAndOrderIds);
+
+		String storedOrderId = idempotencyKeysRepository.findById("raced-key").get().getOrderId();
+		assertEquals(1, claims.stream().filter(Optional::isEmpty).count(), "one request creates the order");
+		assertEquals(claims.size() - 1, claims.stream().filter(Optional.of(storedOrderId)::equals).count(),
+				"the others get that order back");
+		assertEquals(1, idempotencyKeysRepository.count());
+	}
+
+	@Test
+	void releasedKeyCanBeClaimedAgain() {
+		assertEquals(Optional.empty(), idempotencyKeys.claim("rejected-key", "order-1"));
+
+		idempotencyKeys.release("rejected-key");
+
+		assertEquals(Optional.empty(), idempotencyKeys.claim("rejected-key", "order-2"));
+		assertEquals(Optional.of("order-2"), idempotencyKeys.claim("rejected-key", "order-3"));
+	}
+
+	private IdempotencyKeys idempotencyKeys(boolean groupCommit) {
+		IdempotencyKeys keys = new IdempotencyKeys(idempotencyKeysRepository, new SimpleMeterRegistry(),
+				transactionManager, 1000, Duration.ofMinutes(1), 1000, groupCommit, 100, Duration.ofMillis(500));
+		keys.loadKeys();
+		return keys;
+	}
+
+	private List<Optional<String>> claimTogether(String[][] keysAndOrderIds) {
+		ExecutorService requests = Executors.newFixedThreadPool(keysAndOrderIds.length);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<CompletableFuture<Optional<String>>> claims = new ArrayList<>();
+			for (String[] keyAndOrderId : keysAndOrderIds) {
+				claims.add(CompletableFuture.supplyAsync(() -> {
+					awaitQuietly(start);
+					return idempotencyKeys.claim(keyAndOrderId[0], keyAndOrderId[1]);
+				}, requests));
+			}
+			start.countDown();
+			List<Optional<String>> results = new ArrayList<>();
+			claims.forEach(claim -> results.add(claim.join()));
+			return results;
+		} finally {
+			requests.shutdown();
+		}
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
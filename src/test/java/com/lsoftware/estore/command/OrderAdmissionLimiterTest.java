@@ -0,0 +1,160 @@
+package com.lsoftware.estore.command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Permit accounting of {@link OrderAdmissionLimiter}: every permit holds one place until it is
+ * completed, whichever way and however often that happens. The limit tests drive the order
+ * latencies through the limiter's clock.
+ */
+class OrderAdmissionLimiterTest {
+
+	private static final Duration STEADY_LATENCY = Duration.ofMillis(100);
+
+	private static final Duration SLOW_LATENCY = Duration.ofSeconds(1);
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final AtomicLong nanoTime = new AtomicLong();
+
+	@Test
+	void ordersBeyondTheLimitAreRejectedUntilAPermitIsCompleted() {
+		OrderAdmissionLimiter limiter = new OrderAdmissionLimiter(meterRegistry, true, 20, 10, 100);
+		List<OrderAdmissionLimiter.Permit> permits = acquire(limiter, 20);
+
+		assertFalse(limiter.tryAcquire().isPresent());
+		assertThrows(OrderAdmissionRejectedException.class, limiter::acquire);
+		assertEquals(2, meterRegistry.get("orders.admission.rejected").counter().count());
+
+		permits.get(0).onIgnore();
+
+		assertTrue(limiter.tryAcquire().isPresent());
+		assertEquals(20, inFlight());
+	}
+
+	@Test
+	void completingAPermitTwiceReleasesItOnce() {
+		OrderAdmissionLimiter limiter = new OrderAdmissionLimiter(meterRegistry, true, 20, 10, 100);
+		List<OrderAdmissionLimiter.Permit> permits = acquire(limiter, 3);
+
+		permits.get(0).onSuccess();
+		permits.get(0).onIgnore();
+		permits.get(1).onIgnore();
+		permits.get(1).onDropped();
+
+		assertEquals(1, inFlight());
+		// The second completion of the ignored permit did not count as a timeout
+		assertEquals(20, limiter.getLimit());
+	}
+
+	@Test
+	void droppedOrdersCutTheLimitDownToTheMinimum() {
+		OrderAdmissionLimiter limiter = new OrderAdmissionLimiter(meterRegistry, true, 20, 10, 100);
+
+		limiter.acquire().onDropped();
+		assertEquals(18, limiter.getLimit());
+
+		acquire(limiter, 10).forEach(OrderAdmissionLimiter.Permit::onDropped);
+		assertEquals(10, limiter.getLimit());
+		assertEquals(0, inFlight());
+	}
+
+	@Test
+	void disabledLimiterAdmitsEveryOrderButStillCountsThem() {
+		OrderAdmissionLimiter limiter = new OrderAdmissionLimiter(meterRegistry, false, 10, 10, 10);
+
+		List<OrderAdmissionLimiter.Permit> permits = acquire(limiter, 50);
+
+		assertEquals(50, inFlight());
+		permits.forEach(OrderAdmissionLimiter.Permit::onSuccess);
+		assertEquals(0, inFlight());
+		assertEquals(0, meterRegistry.get("orders.admission.rejected").counter().count());
+	}
+
+	@Test
+	void limitGrowsWhileLatencyStaysSteadyUpToTheMaximum() {
+		OrderAdmissionLimiter limiter = clockedLimiter(20, 10, 100);
+
+		fillAndComplete(limiter, STEADY_LATENCY);
+		assertTrue(limiter.getLimit() > 20, "limit " + limiter.getLimit());
+
+		for (int round = 0; round < 50; round++) {
+			fillAndComplete(limiter, STEADY_LATENCY);
+		}
+		assertEquals(100, limiter.getLimit());
+	}
+
+	@Test
+	void limitShrinksWhenLatencyRisesDownToTheMinimum() {
+		OrderAdmissionLimiter limiter = clockedLimiter(20, 10, 100);
+		for (int round = 0; round < 3; round++) {
+			fillAndComplete(limiter, STEADY_LATENCY);
+		}
+		int steadyLimit = limiter.getLimit();
+
+		fillAndComplete(limiter, SLOW_LATENCY);
+		assertTrue(limiter.getLimit() < steadyLimit, "limit " + limiter.getLimit() + " after " + steadyLimit);
+
+		for (int round = 0; round < 5; round++) {
+			fillAndComplete(limiter, SLOW_LATENCY);
+		}
+		assertEquals(10, limiter.getLimit());
+	}
+
+	@Test
+	void ordersArrivingWellBelowTheLimitLeaveItAlone() {
+		OrderAdmissionLimiter limiter = clockedLimiter(20, 10, 100);
+
+		// One order at a time: in flight stays under half the limit whatever the latency
+		for (int order = 0; order < 20; order++) {
+			OrderAdmissionLimiter.Permit permit = limiter.acquire();
+			nanoTime.addAndGet((order % 2 == 0 ? SLOW_LATENCY : STEADY_LATENCY).toNanos());
+			permit.onSuccess();
+		}
+
+		assertEquals(20, limiter.getLimit());
+	}
+
+	private OrderAdmissionLimiter clockedLimiter(int initialLimit, int minLimit, int maxLimit) {
+		return new OrderAdmissionLimiter(meterRegistry, true, initialLimit, minLimit, maxLimit, nanoTime::get);
+	}
+
+	// Admits orders up to the limit, then completes them all after the same latency
+	private void fillAndComplete(OrderAdmissionLimiter limiter, Duration latency) {
+		List<OrderAdmissionLimiter.Permit> permits = new ArrayList<>();
+		for (Optional<OrderAdmissionLimiter.Permit> permit = limiter.tryAcquire(); permit.isPresent();
+				permit = limiter.tryAcquire()) {
+			permits.add(permit.get());
+		}
+		nanoTime.addAndGet(latency.toNanos());
+		permits.forEach(OrderAdmissionLimiter.Permit::onSuccess);
+	}
+
+	private static List<OrderAdmissionLimiter.Permit> acquire(OrderAdmissionLimiter limiter, int count) {
+		List<OrderAdmissionLimiter.Permit> permits = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Optional<OrderAdmissionLimiter.Permit> permit = limiter.tryAcquire();
+			assertTrue(permit.isPresent(), "permit " + i);
+			permits.add(permit.get());
+		}
+		return permits;
+	}
+
+	private int inFlight() {
+		return (int) meterRegistry.get("orders.admission.in-flight").gauge().value();
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.lsoftware.estore.command;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.commandhandling.gateway.DefaultCommandGateway;
+import org.axonframework.eventsourcing.EventSourcingRepository;
+import org.axonframework.eventsourcing.eventstore.EmbeddedEventStore;
+import org.axonframework.eventsourcing.eventstore.inmemory.InMemoryEventStorageEngine;
+import org.axonframework.modelling.command.AggregateAnnotationCommandHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lsoftware.estore.command.commands.ApproveOrderCommand;
+import com.lsoftware.estore.command.commands.CreateOrderCommand;
+import com.lsoftware.estore.command.commands.RejectOrderCommand;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+/**
+ * {@link OrderAggregate} command handling on a {@link SimpleCommandBus} with an in-memory event
+ * store: creating an order, and creating one and then approving or rejecting it, which loads the
+ * aggregate by event sourcing. No snapshots or cache, so this is the cost of the aggregate itself.
+ * The event store is recreated per iteration to keep the event streams from piling up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class OrderAggregateBenchmark {
+
+	private EmbeddedEventStore eventStore;
+
+	private CommandGateway commandGateway;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		eventStore = EmbeddedEventStore.builder()
+				.storageEngine(new InMemoryEventStorageEngine())
+				.build();
+		EventSourcingRepository<OrderAggregate> repository = EventSourcingRepository.builder(OrderAggregate.class)
+				.eventStore(eventStore)
+				.build();
+		SimpleCommandBus commandBus = SimpleCommandBus.builder().build();
+		AggregateAnnotationCommandHandler.<OrderAggregate>builder()
+				.aggregateType(OrderAggregate.class)
+				.repository(repository)
+				.build()
+				.subscribe(commandBus);
+		commandGateway = DefaultCommandGateway.builder().commandBus(commandBus).build();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		eventStore.shutDown();
+	}
+
+	@Benchmark
+	public Object createOrder() {
+		return commandGateway.sendAndWait(createOrderCommand());
+	}
+
+	@Benchmark
+	public Object createAndApproveOrder() {
+		String orderId = commandGateway.sendAndWait(createOrderCommand());
+		return commandGateway.sendAndWait(new ApproveOrderCommand(orderId));
+	}
+
+	@Benchmark
+	public Object createAndRejectOrder() {
+		String orderId = commandGateway.sendAndWait(createOrderCommand());
+		return commandGateway.sendAndWait(new RejectOrderCommand(orderId, "Insufficient funds"));
+	}
+
+	private static CreateOrderCommand createOrderCommand() {
+		return CreateOrderCommand.builder()
+				.orderId(UUID.randomUUID().toString())
+				.userId(UUID.randomUUID().toString())
+				.productId(UUID.randomUUID().toString())
+				.quantity(1)
+				.addressId(UUID.randomUUID().toString())
+				.orderStatus(OrderStatus.CREATED)
+				.build();
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.lsoftware.estore.command;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.distributed.AnnotationRoutingStrategy;
+import org.axonframework.commandhandling.distributed.UnresolvedRoutingKeyPolicy;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.commandhandling.gateway.DefaultCommandGateway;
+import org.axonframework.eventsourcing.EventSourcingRepository;
+import org.axonframework.eventsourcing.eventstore.EmbeddedEventStore;
+import org.axonframework.eventsourcing.eventstore.inmemory.InMemoryEventStorageEngine;
+import org.axonframework.modelling.command.AggregateAnnotationCommandHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lsoftware.estore.command.commands.ApproveOrderCommand;
+import com.lsoftware.estore.command.commands.CreateOrderCommand;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * One dispatching thread, like an Axon Server command thread, sending {@value #ORDERS} orders
+ * (create, then approve once created) without waiting in between. On the {@code simple} bus every
+ * command is handled on the dispatching thread; {@code partitioned} hands them to a
+ * {@link PartitionedCommandBus} with a worker per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PartitionedCommandBusBenchmark {
+
+	private static final int ORDERS = 1000;
+
+	@Param({ "simple", "partitioned" })
+	public String busType;
+
+	private EmbeddedEventStore eventStore;
+
+	private CommandBus commandBus;
+
+	private CommandGateway commandGateway;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		eventStore = EmbeddedEventStore.builder()
+				.storageEngine(new InMemoryEventStorageEngine())
+				.build();
+		EventSourcingRepository<OrderAggregate> repository = EventSourcingRepository.builder(OrderAggregate.class)
+				.eventStore(eventStore)
+				.build();
+		SimpleCommandBus simpleCommandBus = SimpleCommandBus.builder().build();
+		commandBus = "partitioned".equals(busType)
+				? new PartitionedCommandBus(simpleCommandBus,
+						new AnnotationRoutingStrategy(UnresolvedRoutingKeyPolicy.ERROR),
+						Runtime.getRuntime().availableProcessors(), ORDERS, new SimpleMeterRegistry())
+				: simpleCommandBus;
+		AggregateAnnotationCommandHandler.<OrderAggregate>builder()
+				.aggregateType(OrderAggregate.class)
+				.repository(repository)
+				.build()
+				.subscribe(commandBus);
+		commandGateway = DefaultCommandGateway.builder().commandBus(commandBus).build();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws InterruptedException {
+		if (commandBus instanceof PartitionedCommandBus) {
+			((PartitionedCommandBus) commandBus).shutdown();
+		}
+		eventStore.shutDown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public void createAndApproveOrders() {
+		CompletableFuture<?>[] orders = new CompletableFuture<?>[ORDERS];
+		for (int i = 0; i < ORDERS; i++) {
+			String orderId = UUID.randomUUID().toString();
+			orders[i] = commandGateway.send(createOrderCommand(orderId))
+					.thenCompose(result -> commandGateway.send(new ApproveOrderCommand(orderId)));
+		}
+		CompletableFuture.allOf(orders).join();
+	}
+
+	private static CreateOrderCommand createOrderCommand(String orderId) {
+		return CreateOrderCommand.builder()
+				.orderId(orderId)
+				.userId(UUID.randomUUID().toString())
+				.productId(UUID.randomUUID().toString())
+				.quantity(1)
+				.addressId(UUID.randomUUID().toString())
+				.orderStatus(OrderStatus.CREATED)
+				.build();
+	}
+
+}
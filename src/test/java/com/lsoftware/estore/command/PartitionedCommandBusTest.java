@@ -0,0 +1,129 @@
+package com.lsoftware.estore.command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.CommandResultMessage;
+import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.messaging.MessageHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PartitionedCommandBus} over a SimpleCommandBus whose handler records the steps of each
+ * order in the order it handles them.
+ */
+class PartitionedCommandBusTest {
+
+	private static final int ORDERS = 20;
+
+	private static final int STEPS = 200;
+
+	private final SimpleCommandBus delegate = SimpleCommandBus.builder().build();
+
+	private PartitionedCommandBus commandBus;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		commandBus.shutdown();
+	}
+
+	@Test
+	void commandsOfOneOrderAreHandledInDispatchOrder() throws Exception {
+		commandBus = new PartitionedCommandBus(delegate, command -> ((Step) command.getPayload()).orderId, 4,
+				ORDERS * STEPS, new SimpleMeterRegistry());
+		Map<String, List<Integer>> handledSteps = new ConcurrentHashMap<>();
+		subscribe(step -> handledSteps.computeIfAbsent(step.orderId, orderId -> Collections.synchronizedList(
+				new ArrayList<>())).add(step.step));
+
+		List<FutureCallback<Step, Object>> results = new ArrayList<>();
+		for (int step = 0; step < STEPS; step++) {
+			for (int order = 0; order < ORDERS; order++) {
+				results.add(dispatch(new Step("order-" + order, step)));
+			}
+		}
+		for (FutureCallback<Step, Object> result : results) {
+			assertFalse(result.get(10, TimeUnit.SECONDS).isExceptional());
+		}
+
+		List<Integer> allSteps = IntStream.range(0, STEPS).boxed().collect(Collectors.toList());
+		assertEquals(ORDERS, handledSteps.size());
+		handledSteps.forEach((orderId, steps) -> assertEquals(allSteps, steps, orderId));
+	}
+
+	@Test
+	void commandForAFullPartitionIsRejected() throws Exception {
+		commandBus = new PartitionedCommandBus(delegate, command -> ((Step) command.getPayload()).orderId, 1, 2,
+				new SimpleMeterRegistry());
+		CountDownLatch handling = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		subscribe(step -> {
+			handling.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		FutureCallback<Step, Object> running = dispatch(new Step("order-1", 0));
+		assertTrue(handling.await(10, TimeUnit.SECONDS));
+		FutureCallback<Step, Object> firstQueued = dispatch(new Step("order-1", 1));
+		FutureCallback<Step, Object> secondQueued = dispatch(new Step("order-1", 2));
+		FutureCallback<Step, Object> rejected = dispatch(new Step("order-1", 3));
+
+		CommandResultMessage<?> rejection = rejected.get(10, TimeUnit.SECONDS);
+		assertTrue(rejection.isExceptional());
+		assertTrue(rejection.exceptionResult() instanceof RejectedExecutionException);
+
+		release.countDown();
+		assertFalse(running.get(10, TimeUnit.SECONDS).isExceptional());
+		assertFalse(firstQueued.get(10, TimeUnit.SECONDS).isExceptional());
+		assertFalse(secondQueued.get(10, TimeUnit.SECONDS).isExceptional());
+	}
+
+	private void subscribe(Consumer<Step> handler) {
+		MessageHandler<CommandMessage<?>> messageHandler = command -> {
+			handler.accept((Step) command.getPayload());
+			return null;
+		};
+		commandBus.subscribe(Step.class.getName(), messageHandler);
+	}
+
+	private FutureCallback<Step, Object> dispatch(Step step) {
+		FutureCallback<Step, Object> callback = new FutureCallback<>();
+		commandBus.dispatch(GenericCommandMessage.asCommandMessage(step), callback);
+		return callback;
+	}
+
+	private static class Step {
+
+		private final String orderId;
+
+		private final int step;
+
+		Step(String orderId, int step) {
+			this.orderId = orderId;
+			this.step = step;
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.lsoftware.estore.core;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanUtils;
+
+import com.lsoftware.estore.command.commands.CreateOrderCommand;
+import com.lsoftware.estore.core.data.OrderEntity;
+import com.lsoftware.estore.core.events.OrderCreatedEvent;
+import com.lsoftware.estore.core.mapping.OrderMapper;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+/**
+ * The per-order copies on the creation path: CreateOrderCommand to OrderCreatedEvent in
+ * OrderAggregate and OrderCreatedEvent to OrderEntity in OrderEventsHandler, with the former
+ * {@code BeanUtils.copyProperties} and with {@link OrderMapper}. Run with {@code -prof gc} to
+ * compare the allocation per order as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class OrderMappingBenchmark {
+
+	private CreateOrderCommand createOrderCommand;
+
+	private OrderCreatedEvent orderCreatedEvent;
+
+	@Setup
+	public void setUp() {
+		createOrderCommand = CreateOrderCommand.builder()
+				.orderId(UUID.randomUUID().toString())
+				.userId(UUID.randomUUID().toString())
+				.productId(UUID.randomUUID().toString())
+				.quantity(1)
+				.addressId(UUID.randomUUID().toString())
+				.orderStatus(OrderStatus.CREATED)
+				.build();
+		orderCreatedEvent = OrderMapper.toOrderCreatedEvent(createOrderCommand);
+	}
+
+	@Benchmark
+	public OrderCreatedEvent beanUtilsCommandToEvent() {
+		OrderCreatedEvent event = new OrderCreatedEvent();
+		BeanUtils.copyProperties(createOrderCommand, event);
+		return event;
+	}
+
+	@Benchmark
+	public OrderEntity beanUtilsEventToEntity() {
+		OrderEntity orderEntity = new OrderEntity();
+		BeanUtils.copyProperties(orderCreatedEvent, orderEntity);
+		return orderEntity;
+	}
+
+	@Benchmark
+	public OrderCreatedEvent mapperCommandToEvent() {
+		return OrderMapper.toOrderCreatedEvent(createOrderCommand);
+	}
+
+	@Benchmark
+	public OrderEntity mapperEventToEntity() {
+		return OrderMapper.toOrderEntity(orderCreatedEvent);
+	}
+
+}
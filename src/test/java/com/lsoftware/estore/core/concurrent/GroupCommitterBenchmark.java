@@ -0,0 +1,131 @@
+package com.lsoftware.estore.core.concurrent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 32 request threads each inserting an idempotency key into an H2 file database, as POST /orders
+ * does. {@code direct} commits every insert on the thread's own connection; {@code grouped} submits
+ * it to a {@link GroupCommitter} and waits for the batch commit. Throughput is commits per
+ * millisecond, the sample time mode gives the p99 each request waits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(32)
+@Fork(1)
+public class GroupCommitterBenchmark {
+
+	private static final String URL = "jdbc:h2:file:./target/group-commit-benchmark/orders";
+
+	private static final String INSERT = "INSERT INTO idempotency_keys (idempotency_key, order_id, created_at) VALUES (?, ?, ?)";
+
+	@Param({ "direct", "grouped" })
+	public String commitMode;
+
+	@Param({ "0", "2" })
+	public long lingerMillis;
+
+	private Connection writerConnection;
+
+	private GroupCommitter<String[]> groupCommitter;
+
+	@State(Scope.Thread)
+	public static class RequestConnection {
+
+		private Connection connection;
+
+		@Setup
+		public void open() throws SQLException {
+			connection = DriverManager.getConnection(URL, "sa", "");
+			connection.setAutoCommit(false);
+		}
+
+		@TearDown
+		public void close() throws SQLException {
+			connection.close();
+		}
+	}
+
+	@Setup
+	public void setUp() throws SQLException {
+		writerConnection = DriverManager.getConnection(URL, "sa", "");
+		try (Statement statement = writerConnection.createStatement()) {
+			statement.execute("DROP TABLE IF EXISTS idempotency_keys");
+			statement.execute("CREATE TABLE idempotency_keys (idempotency_key VARCHAR(255) PRIMARY KEY, "
+					+ "order_id VARCHAR(255), created_at TIMESTAMP)");
+		}
+		writerConnection.setAutoCommit(false);
+		groupCommitter = new GroupCommitter<>("benchmark", 100, Duration.ofMillis(lingerMillis), this::insertAll,
+				new SimpleMeterRegistry());
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		groupCommitter.close();
+		writerConnection.close();
+	}
+
+	@Benchmark
+	public void insertKey(RequestConnection requestConnection) throws SQLException {
+		String[] key = { UUID.randomUUID().toString(), UUID.randomUUID().toString() };
+		if ("grouped".equals(commitMode)) {
+			groupCommitter.submit(key).join();
+		} else {
+			insert(requestConnection.connection, Collections.singletonList(key));
+		}
+	}
+
+	private void insertAll(List<String[]> keys) {
+		try {
+			insert(writerConnection, keys);
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void insert(Connection connection, List<String[]> keys) throws SQLException {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+			for (String[] key : keys) {
+				insert.setString(1, key[0]);
+				insert.setString(2, key[1]);
+				insert.setTimestamp(3, now);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.lsoftware.estore.core.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link GroupCommitter} with a writer that records its batches and fails every batch holding a
+ * "bad" write.
+ */
+class GroupCommitterTest {
+
+	private static final IllegalArgumentException BAD_WRITE = new IllegalArgumentException("bad write");
+
+	private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+	private final Consumer<List<String>> writer = writes -> {
+		batches.add(new ArrayList<>(writes));
+		if (writes.contains("bad")) {
+			throw BAD_WRITE;
+		}
+	};
+
+	private GroupCommitter<String> groupCommitter;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		groupCommitter.close();
+	}
+
+	@Test
+	void failedBatchIsRetriedOneWriteAtATime() {
+		// The linger outlasts the submits, so the three writes fill one batch
+		groupCommitter = new GroupCommitter<>("test", 3, Duration.ofSeconds(10), writer, new SimpleMeterRegistry());
+
+		CompletableFuture<Void> first = groupCommitter.submit("first");
+		CompletableFuture<Void> bad = groupCommitter.submit("bad");
+		CompletableFuture<Void> last = groupCommitter.submit("last");
+
+		first.join();
+		last.join();
+		CompletionException failure = assertThrows(CompletionException.class, bad::join);
+		assertSame(BAD_WRITE, failure.getCause());
+		assertEquals(Arrays.asList(
+				Arrays.asList("first", "bad", "last"),
+				Collections.singletonList("first"),
+				Collections.singletonList("bad"),
+				Collections.singletonList("last")), batches);
+	}
+
+	@Test
+	void failedSingleWriteIsNotRetried() {
+		groupCommitter = new GroupCommitter<>("test", 3, Duration.ZERO, writer, new SimpleMeterRegistry());
+
+		CompletionException failure = assertThrows(CompletionException.class,
+				() -> groupCommitter.submit("bad").join());
+
+		assertSame(BAD_WRITE, failure.getCause());
+		assertEquals(Collections.singletonList(Collections.singletonList("bad")), batches);
+	}
+
+	@Test
+	void errorThrownByTheWriterFailsTheWritesAndKeepsTheCommitterRunning() {
+		AssertionError error = new AssertionError("writer broke");
+		groupCommitter = new GroupCommitter<>("test", 3, Duration.ZERO, writes -> {
+			if (writes.contains("broken")) {
+				throw error;
+			}
+		}, new SimpleMeterRegistry());
+
+		CompletionException failure = assertThrows(CompletionException.class,
+				() -> groupCommitter.submit("broken").join());
+
+		assertSame(error, failure.getCause());
+		groupCommitter.submit("next").join();
+	}
+
+	@Test
+	void closeWritesWhatIsQueuedAndRefusesLaterWrites() throws InterruptedException {
+		// The batch is still lingering when close is called
+		groupCommitter = new GroupCommitter<>("test", 10, Duration.ofMillis(500), writer, new SimpleMeterRegistry());
+		CompletableFuture<Void> first = groupCommitter.submit("first");
+		CompletableFuture<Void> second = groupCommitter.submit("second");
+
+		groupCommitter.close();
+
+		assertTrue(first.isDone() && !first.isCompletedExceptionally());
+		assertTrue(second.isDone() && !second.isCompletedExceptionally());
+		assertEquals(Collections.singletonList(Arrays.asList("first", "second")), batches);
+		CompletionException refused = assertThrows(CompletionException.class,
+				() -> groupCommitter.submit("late").join());
+		assertTrue(refused.getCause() instanceof IllegalStateException);
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.lsoftware.estore.core.serialization;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lsoftware.estore.core.events.OrderApprovedEvent;
+import com.lsoftware.estore.core.events.OrderCreatedEvent;
+import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+/**
+ * ns per serialize/deserialize of the order events with the former XStream event serializer
+ * ({@code xstream}) and the current one ({@code compact}). The serialized size of each event is
+ * printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class EventSerializerBenchmark {
+
+	@Param({ "xstream", "compact" })
+	public String serializerType;
+
+	@Param({ "OrderCreatedEvent", "OrderApprovedEvent", "OrderRejectedEvent" })
+	public String eventType;
+
+	private Serializer serializer;
+
+	private Object event;
+
+	private SerializedObject<byte[]> serializedEvent;
+
+	@Setup
+	public void setUp() {
+		serializer = "compact".equals(serializerType) ? OrderSerializers.compact() : OrderSerializers.xStream();
+		String orderId = UUID.randomUUID().toString();
+		switch (eventType) {
+		case "OrderCreatedEvent":
+			event = new OrderCreatedEvent(orderId, UUID.randomUUID().toString(), UUID.randomUUID().toString(), 1,
+					UUID.randomUUID().toString(), OrderStatus.CREATED);
+			break;
+		case "OrderApprovedEvent":
+			event = new OrderApprovedEvent(orderId);
+			break;
+		default:
+			event = new OrderRejectedEvent(orderId, "Insufficient funds");
+		}
+		serializedEvent = serializer.serialize(event, byte[].class);
+
+		verifyRoundTrip(serializer.deserialize(serializedEvent));
+		// Events stored as XML before the switch must still be readable
+		verifyRoundTrip(OrderSerializers.compact().deserialize(OrderSerializers.xStream().serialize(event, byte[].class)));
+		System.out.printf("%n%s with %s: %d bytes%n", eventType, serializerType, serializedEvent.getData().length);
+	}
+
+	@Benchmark
+	public SerializedObject<byte[]> serialize() {
+		return serializer.serialize(event, byte[].class);
+	}
+
+	@Benchmark
+	public Object deserialize() {
+		return serializer.deserialize(serializedEvent);
+	}
+
+	private void verifyRoundTrip(Object deserialized) {
+		if (!event.equals(deserialized)) {
+			throw new IllegalStateException("Round trip changed " + event + " into " + deserialized);
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.lsoftware.estore.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a fixed number of order creation requests in flight, spread round robin over the given
+ * endpoints, for a fixed time. Answers are counted as completed (200), still running at the
+ * service's timeout (202), not admitted (429) or failed.
+ */
+class OrdersLoad {
+
+	private static final String PRODUCT_ID = System.getProperty("productId", UUID.randomUUID().toString());
+
+	private final HttpClient httpClient;
+
+	OrdersLoad(HttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	Result drive(List<URI> orderUris, int inFlight, Duration duration) throws InterruptedException {
+		Result result = new Result(duration);
+		Semaphore permits = new Semaphore(inFlight);
+		long end = System.nanoTime() + duration.toNanos();
+		for (long request = 0; System.nanoTime() < end; request++) {
+			if (!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+				continue;
+			}
+			HttpRequest createOrder = HttpRequest.newBuilder(orderUris.get((int) (request % orderUris.size())))
+					.header("Content-Type", "application/json")
+					.timeout(Duration.ofSeconds(60))
+					.POST(HttpRequest.BodyPublishers.ofString("{\"productId\":\"" + PRODUCT_ID
+							+ "\",\"quantity\":1,\"addressId\":\"" + UUID.randomUUID() + "\"}"))
+					.build();
+			httpClient.sendAsync(createOrder, HttpResponse.BodyHandlers.discarding())
+					.whenComplete((response, exception) -> {
+						permits.release();
+						if (exception != null) {
+							result.failed.incrementAndGet();
+						} else if (response.statusCode() == 200) {
+							result.completed.incrementAndGet();
+						} else if (response.statusCode() == 202) {
+							result.timedOut.incrementAndGet();
+						} else if (response.statusCode() == 429) {
+							result.rejected.incrementAndGet();
+						} else {
+							result.failed.incrementAndGet();
+						}
+					});
+		}
+		// Let the requests of this round finish before the next one starts
+		permits.acquire(inFlight);
+		return result;
+	}
+
+	static class Result {
+
+		private final Duration duration;
+
+		final AtomicLong completed = new AtomicLong();
+
+		final AtomicLong timedOut = new AtomicLong();
+
+		final AtomicLong rejected = new AtomicLong();
+
+		final AtomicLong failed = new AtomicLong();
+
+		Result(Duration duration) {
+			this.duration = duration;
+		}
+
+		double ordersPerSecond() {
+			return completed.get() * 1000d / duration.toMillis();
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.lsoftware.estore.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One orders-service JVM started from the packaged jar for the load harnesses. Its output goes to
+ * {@code target/orders-node-<name>.log}.
+ */
+class OrdersNode implements AutoCloseable {
+
+	static final String JAR = System.getProperty("jar", "target/OrdersService-0.0.1-SNAPSHOT.jar");
+
+	private static final Pattern METRIC_VALUE = Pattern.compile("\"statistic\":\"VALUE\",\"value\":([0-9.Ee+-]+)");
+
+	private final HttpClient httpClient;
+
+	private final int port;
+
+	private final Process process;
+
+	OrdersNode(HttpClient httpClient, String java, String name, int port, String... arguments) throws IOException {
+		this.httpClient = httpClient;
+		this.port = port;
+		List<String> command = new ArrayList<>(List.of(java, "-jar", JAR,
+				"--server.port=" + port,
+				"--instanceId=" + name));
+		command.addAll(List.of(arguments));
+		this.process = new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(new File("target/orders-node-" + name + ".log"))
+				.start();
+	}
+
+	URI uri(String path) {
+		return URI.create("http://localhost:" + port + path);
+	}
+
+	void awaitHealthy() throws InterruptedException {
+		HttpRequest health = HttpRequest.newBuilder(uri("/actuator/health"))
+				.timeout(Duration.ofSeconds(5))
+				.build();
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(3);
+		while (System.nanoTime() < deadline) {
+			if (!process.isAlive()) {
+				throw new IllegalStateException("Node on port " + port + " exited, see its log in target");
+			}
+			try {
+				if (httpClient.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+					return;
+				}
+			} catch (IOException e) {
+				// Not listening yet
+			}
+			Thread.sleep(1000);
+		}
+		throw new IllegalStateException("Node on port " + port + " did not become healthy");
+	}
+
+	/**
+	 * Current value of a gauge from /actuator/metrics, e.g. {@code jvm.memory.used?tag=area:heap}.
+	 */
+	double metric(String nameAndTags) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(uri("/actuator/metrics/" + nameAndTags))
+				.timeout(Duration.ofSeconds(5))
+				.build();
+		String body = httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+		Matcher value = METRIC_VALUE.matcher(body);
+		if (!value.find()) {
+			throw new IllegalStateException("No value for metric " + nameAndTags + ": " + body);
+		}
+		return Double.parseDouble(value.group(1));
+	}
+
+	@Override
+	public void close() throws InterruptedException {
+		process.destroy();
+		if (!process.waitFor(30, TimeUnit.SECONDS)) {
+			process.destroyForcibly();
+		}
+	}
+
+}
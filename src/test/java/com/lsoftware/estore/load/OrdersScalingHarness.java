@@ -0,0 +1,84 @@
+package com.lsoftware.estore.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts 1, 2, ... orders-service nodes from the packaged jar with the {@code distributed} profile
+ * and drives each cluster with POST /orders/async spread round robin over its nodes, to show how
+ * completed orders per second grow with the number of nodes. Axon Server, Eureka and the products,
+ * payments and users services must be running. Build the jar first, then:
+ *
+ * <pre>
+ * mvn -DskipTests package
+ * mvn -DskipTests test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.lsoftware.estore.load.OrdersScalingHarness \
+ *     -Dnodes=1,2,3,4 -DproductId=... -Dduration=60
+ * </pre>
+ *
+ * Every node gets {@code concurrency} requests in flight, so the offered load grows with the
+ * cluster.
+ */
+public class OrdersScalingHarness {
+
+	private static final int FIRST_PORT = Integer.getInteger("firstPort", 8090);
+
+	private static final int CONCURRENCY = Integer.getInteger("concurrency", 64);
+
+	private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("warmup", 15));
+
+	private static final Duration DURATION = Duration.ofSeconds(Long.getLong("duration", 60));
+
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(5))
+			.build();
+
+	private final OrdersLoad ordersLoad = new OrdersLoad(httpClient);
+
+	public static void main(String[] args) throws Exception {
+		int[] clusterSizes = Arrays.stream(System.getProperty("nodes", "1,2,3,4").split(","))
+				.mapToInt(Integer::parseInt)
+				.toArray();
+		OrdersScalingHarness harness = new OrdersScalingHarness();
+
+		double baseline = 0;
+		System.out.println("nodes  orders/sec  speedup  completed  timed-out  rejected  failed");
+		for (int nodes : clusterSizes) {
+			OrdersLoad.Result result = harness.run(nodes);
+			if (baseline == 0) {
+				baseline = result.ordersPerSecond() / nodes;
+			}
+			System.out.printf("%5d  %10.1f  %7.2f  %9d  %9d  %8d  %6d%n", nodes, result.ordersPerSecond(),
+					result.ordersPerSecond() / baseline, result.completed.get(), result.timedOut.get(),
+					result.rejected.get(), result.failed.get());
+		}
+	}
+
+	private OrdersLoad.Result run(int nodes) throws Exception {
+		List<OrdersNode> cluster = new ArrayList<>();
+		List<URI> orderUris = new ArrayList<>();
+		try {
+			for (int node = 0; node < nodes; node++) {
+				OrdersNode ordersNode = new OrdersNode(httpClient, "java", String.valueOf(node), FIRST_PORT + node,
+						"--spring.profiles.active=distributed");
+				cluster.add(ordersNode);
+				orderUris.add(ordersNode.uri("/orders/async"));
+			}
+			for (OrdersNode ordersNode : cluster) {
+				ordersNode.awaitHealthy();
+			}
+
+			ordersLoad.drive(orderUris, nodes * CONCURRENCY, WARMUP);
+			return ordersLoad.drive(orderUris, nodes * CONCURRENCY, DURATION);
+		} finally {
+			for (OrdersNode ordersNode : cluster) {
+				ordersNode.close();
+			}
+		}
+	}
+
+}
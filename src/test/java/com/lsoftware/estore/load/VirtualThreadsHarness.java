@@ -0,0 +1,104 @@
+package com.lsoftware.estore.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares one node handling requests on Tomcat's platform threads with the same node on virtual
+ * threads ({@code orders.virtual-threads.enabled}), under the blocking POST /orders with growing
+ * numbers of requests in flight. Reported per run: completed orders/sec, the most orders in progress
+ * at once (orders.admission.in-flight), live threads, and heap growth per order in progress. The
+ * admission limiter is switched off so that only the threading model bounds the orders in progress.
+ * Needs a Java 21 JVM for the nodes and the same services as {@link OrdersScalingHarness}:
+ *
+ * <pre>
+ * mvn -DskipTests package
+ * mvn -DskipTests test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.lsoftware.estore.load.VirtualThreadsHarness \
+ *     -Djava=/opt/jdk-21/bin/java -Dconcurrency=100,500,2000 -DproductId=...
+ * </pre>
+ */
+public class VirtualThreadsHarness {
+
+	private static final String JAVA = System.getProperty("java", "java");
+
+	private static final int PORT = Integer.getInteger("port", 8090);
+
+	private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("warmup", 15));
+
+	private static final Duration DURATION = Duration.ofSeconds(Long.getLong("duration", 60));
+
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(5))
+			.build();
+
+	private final OrdersLoad ordersLoad = new OrdersLoad(httpClient);
+
+	public static void main(String[] args) throws Exception {
+		int[] concurrencies = Arrays.stream(System.getProperty("concurrency", "100,500,2000").split(","))
+				.mapToInt(Integer::parseInt)
+				.toArray();
+		VirtualThreadsHarness harness = new VirtualThreadsHarness();
+
+		System.out.println("threads   in-flight  orders/sec  peak-orders  peak-threads  heap-MB  KB/order");
+		for (boolean virtualThreads : new boolean[] { false, true }) {
+			harness.run(virtualThreads, concurrencies);
+		}
+	}
+
+	private void run(boolean virtualThreads, int[] concurrencies) throws Exception {
+		try (OrdersNode node = new OrdersNode(httpClient, JAVA, virtualThreads ? "virtual" : "platform", PORT,
+				"--orders.virtual-threads.enabled=" + virtualThreads,
+				"--orders.admission.enabled=false")) {
+			node.awaitHealthy();
+			List<URI> orderUris = List.of(node.uri("/orders"));
+			ordersLoad.drive(orderUris, concurrencies[0], WARMUP);
+
+			for (int concurrency : concurrencies) {
+				double idleHeap = node.metric("jvm.memory.used?tag=area:heap");
+				Peaks peaks = new Peaks();
+				ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+				sampler.scheduleAtFixedRate(() -> peaks.sample(node), 0, 500, TimeUnit.MILLISECONDS);
+				OrdersLoad.Result result;
+				try {
+					result = ordersLoad.drive(orderUris, concurrency, DURATION);
+				} finally {
+					sampler.shutdownNow();
+					sampler.awaitTermination(5, TimeUnit.SECONDS);
+				}
+
+				double heapGrowth = Math.max(0, peaks.heap - idleHeap);
+				System.out.printf("%-8s  %9d  %10.1f  %11.0f  %12.0f  %7.0f  %8.1f%n",
+						virtualThreads ? "virtual" : "platform", concurrency, result.ordersPerSecond(),
+						peaks.orders, peaks.threads, peaks.heap / (1024 * 1024),
+						peaks.orders == 0 ? 0 : heapGrowth / 1024 / peaks.orders);
+			}
+		}
+	}
+
+	private static class Peaks {
+
+		private volatile double orders;
+
+		private volatile double threads;
+
+		private volatile double heap;
+
+		void sample(OrdersNode node) {
+			try {
+				orders = Math.max(orders, node.metric("orders.admission.in-flight"));
+				threads = Math.max(threads, node.metric("jvm.threads.live"));
+				heap = Math.max(heap, node.metric("jvm.memory.used?tag=area:heap"));
+			} catch (Exception e) {
+				// Skip the sample; the node is busy
+			}
+		}
+	}
+
+}
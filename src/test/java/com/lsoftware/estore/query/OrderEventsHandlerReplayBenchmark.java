@@ -0,0 +1,155 @@
+package com.lsoftware.estore.query;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.eventhandling.GenericEventMessage;
+import org.axonframework.eventhandling.tokenstore.inmemory.InMemoryTokenStore;
+import org.axonframework.messaging.unitofwork.DefaultUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import com.lsoftware.estore.core.data.OrderEntity;
+import com.lsoftware.estore.core.data.OrdersRepository;
+import com.lsoftware.estore.core.events.OrderApprovedEvent;
+import com.lsoftware.estore.core.events.OrderCreatedEvent;
+import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.metrics.OrderMetrics;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Replays 100k order events (50k orders, each created and then approved or rejected) through
+ * {@link OrderEventsHandler} in batches of the order-group processor's size, against an in-memory
+ * H2 database with the JPA settings of application.properties. The score is events/sec; every
+ * invocation starts from an empty orders table, as a rebuild does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(OrderEventsHandlerReplayBenchmark.EVENTS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class OrderEventsHandlerReplayBenchmark {
+
+	private static final int ORDERS = 50_000;
+
+	static final int EVENTS = 2 * ORDERS;
+
+	private static final int BATCH_SIZE = 100;
+
+	// Status events trail their OrderCreatedEvent so about half land in a later batch
+	private static final int STATUS_EVENT_DISTANCE = 50;
+
+	@Configuration
+	@ImportAutoConfiguration({ DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+			TransactionAutoConfiguration.class })
+	@EntityScan(basePackageClasses = OrderEntity.class)
+	@EnableJpaRepositories(basePackageClasses = OrdersRepository.class)
+	static class ProjectionConfiguration {
+	}
+
+	private ConfigurableApplicationContext context;
+
+	private OrdersRepository ordersRepository;
+
+	private List<List<Object>> batches;
+
+	private OrderEventsHandler orderEventsHandler;
+
+	@Setup
+	public void startDatabase() {
+		context = new SpringApplicationBuilder(ProjectionConfiguration.class)
+				.web(WebApplicationType.NONE)
+				// Arguments take precedence over application.properties, which points at the file database
+				.run("--spring.datasource.url=jdbc:h2:mem:replay-benchmark;DB_CLOSE_DELAY=-1",
+						"--spring.jpa.hibernate.ddl-auto=create-drop");
+		ordersRepository = context.getBean(OrdersRepository.class);
+		List<Object> events = orderEvents();
+		batches = new ArrayList<>();
+		for (int from = 0; from < events.size(); from += BATCH_SIZE) {
+			batches.add(events.subList(from, Math.min(from + BATCH_SIZE, events.size())));
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyProjection() {
+		ordersRepository.deleteAllInBatch();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		orderEventsHandler = new OrderEventsHandler(ordersRepository,
+				new OrderSummaryCache(meterRegistry, 10_000, Duration.ofMinutes(10)), new OrderMetrics(meterRegistry),
+				new InMemoryTokenStore());
+	}
+
+	@TearDown
+	public void stopDatabase() {
+		context.close();
+	}
+
+	@Benchmark
+	public long replay() throws Exception {
+		for (List<Object> batch : batches) {
+			UnitOfWork<?> unitOfWork = DefaultUnitOfWork.startAndGet(GenericEventMessage.asEventMessage(batch.get(0)));
+			for (Object event : batch) {
+				if (event instanceof OrderCreatedEvent) {
+					orderEventsHandler.on((OrderCreatedEvent) event);
+				} else if (event instanceof OrderApprovedEvent) {
+					orderEventsHandler.on((OrderApprovedEvent) event);
+				} else {
+					orderEventsHandler.on((OrderRejectedEvent) event);
+				}
+			}
+			unitOfWork.commit();
+		}
+		return ordersRepository.count();
+	}
+
+	private static List<Object> orderEvents() {
+		List<String> orderIds = new ArrayList<>(ORDERS);
+		List<Object> events = new ArrayList<>(EVENTS);
+		for (int i = 0; i < ORDERS + STATUS_EVENT_DISTANCE; i++) {
+			if (i < ORDERS) {
+				String orderId = UUID.randomUUID().toString();
+				orderIds.add(orderId);
+				events.add(new OrderCreatedEvent(orderId, UUID.randomUUID().toString(),
+						UUID.randomUUID().toString(), 1, UUID.randomUUID().toString(), OrderStatus.CREATED));
+			}
+			int statusOrder = i - STATUS_EVENT_DISTANCE;
+			if (statusOrder >= 0) {
+				String orderId = orderIds.get(statusOrder);
+				events.add(statusOrder % 4 == 0
+						? new OrderRejectedEvent(orderId, "Payment timeout")
+						: new OrderApprovedEvent(orderId));
+			}
+		}
+		return events;
+	}
+
+}
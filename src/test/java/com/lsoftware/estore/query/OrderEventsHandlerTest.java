@@ -0,0 +1,142 @@
+package com.lsoftware.estore.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.axonframework.eventhandling.GenericEventMessage;
+import org.axonframework.eventhandling.tokenstore.inmemory.InMemoryTokenStore;
+import org.axonframework.messaging.unitofwork.DefaultUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import com.lsoftware.estore.core.data.OrderEntity;
+import com.lsoftware.estore.core.data.OrdersRepository;
+import com.lsoftware.estore.core.events.OrderApprovedEvent;
+import com.lsoftware.estore.core.events.OrderCreatedEvent;
+import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.metrics.OrderMetrics;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Feeds order events through {@link OrderEventsHandler} in event processor sized batches against H2,
+ * the way a replay of the order-group processor does.
+ */
+@DataJpaTest
+class OrderEventsHandlerTest {
+
+	private static final int ORDERS = 2_000;
+
+	private static final int BATCH_SIZE = 100;
+
+	// Status events trail their OrderCreatedEvent so about half land in a later batch
+	private static final int STATUS_EVENT_DISTANCE = 50;
+
+	@Configuration
+	@EntityScan(basePackageClasses = OrderEntity.class)
+	@EnableJpaRepositories(basePackageClasses = OrdersRepository.class)
+	static class ProjectionConfiguration {
+	}
+
+	@Autowired
+	private OrdersRepository ordersRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	private OrderEventsHandler orderEventsHandler;
+
+	@BeforeEach
+	void setUp() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		orderEventsHandler = new OrderEventsHandler(ordersRepository,
+				new OrderSummaryCache(meterRegistry, ORDERS, Duration.ofMinutes(10)), new OrderMetrics(meterRegistry),
+				new InMemoryTokenStore());
+	}
+
+	@Test
+	void replayedEventsLeaveEveryOrderWithItsLastStatus() throws Exception {
+		Map<String, OrderStatus> expectedStatuses = new LinkedHashMap<>();
+		List<Object> events = orderEvents(expectedStatuses);
+
+		for (int from = 0; from < events.size(); from += BATCH_SIZE) {
+			handleBatch(events.subList(from, Math.min(from + BATCH_SIZE, events.size())));
+		}
+
+		assertEquals(ORDERS, ordersRepository.count());
+		for (OrderEntity orderEntity : ordersRepository.findAll()) {
+			assertEquals(expectedStatuses.get(orderEntity.getOrderId()), orderEntity.getOrderStatus(),
+					orderEntity.getOrderId());
+		}
+	}
+
+	@Test
+	void redeliveredOrderCreatedEventUpdatesTheExistingOrder() throws Exception {
+		OrderCreatedEvent redelivered = orderCreatedEvent(UUID.randomUUID().toString());
+		OrderCreatedEvent created = orderCreatedEvent(UUID.randomUUID().toString());
+		handleBatch(Arrays.asList(redelivered, new OrderApprovedEvent(redelivered.getOrderId())));
+
+		handleBatch(Arrays.asList(redelivered, new OrderApprovedEvent(redelivered.getOrderId()), created));
+
+		assertEquals(2, ordersRepository.count());
+		assertEquals(OrderStatus.APPROVED, ordersRepository.findByOrderId(redelivered.getOrderId()).getOrderStatus());
+		assertEquals(OrderStatus.CREATED, ordersRepository.findByOrderId(created.getOrderId()).getOrderStatus());
+	}
+
+	private void handleBatch(List<Object> batch) throws Exception {
+		UnitOfWork<?> unitOfWork = DefaultUnitOfWork.startAndGet(GenericEventMessage.asEventMessage(batch.get(0)));
+		for (Object event : batch) {
+			if (event instanceof OrderCreatedEvent) {
+				orderEventsHandler.on((OrderCreatedEvent) event);
+			} else if (event instanceof OrderApprovedEvent) {
+				orderEventsHandler.on((OrderApprovedEvent) event);
+			} else {
+				orderEventsHandler.on((OrderRejectedEvent) event);
+			}
+		}
+		unitOfWork.commit();
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	private static List<Object> orderEvents(Map<String, OrderStatus> expectedStatuses) {
+		List<String> orderIds = new ArrayList<>(ORDERS);
+		List<Object> events = new ArrayList<>(ORDERS * 2);
+		for (int i = 0; i < ORDERS + STATUS_EVENT_DISTANCE; i++) {
+			if (i < ORDERS) {
+				String orderId = UUID.randomUUID().toString();
+				orderIds.add(orderId);
+				events.add(orderCreatedEvent(orderId));
+			}
+			int statusOrder = i - STATUS_EVENT_DISTANCE;
+			if (statusOrder >= 0) {
+				String orderId = orderIds.get(statusOrder);
+				boolean rejected = statusOrder % 4 == 0;
+				events.add(rejected ? new OrderRejectedEvent(orderId, "Payment timeout") : new OrderApprovedEvent(orderId));
+				expectedStatuses.put(orderId, rejected ? OrderStatus.REJECTED : OrderStatus.APPROVED);
+			}
+		}
+		return events;
+	}
+
+	private static OrderCreatedEvent orderCreatedEvent(String orderId) {
+		return new OrderCreatedEvent(orderId, UUID.randomUUID().toString(), UUID.randomUUID().toString(), 1,
+				UUID.randomUUID().toString(), OrderStatus.CREATED);
+	}
+
+}
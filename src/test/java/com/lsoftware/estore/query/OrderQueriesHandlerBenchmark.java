@@ -0,0 +1,74 @@
+package com.lsoftware.estore.query;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lsoftware.estore.core.data.OrderEntity;
+import com.lsoftware.estore.core.data.OrdersRepository;
+import com.lsoftware.estore.core.model.OrderStatus;
+import com.lsoftware.estore.core.model.OrderSummary;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link OrderQueriesHandler#findOrder(FindOrderQuery)} answered from the {@link OrderSummaryCache}
+ * ({@code cacheHit}) and from the repository ({@code cacheMiss}, a cache that keeps nothing). The
+ * repository is an in-memory stand-in, so the miss path shows the handler's own overhead, not H2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class OrderQueriesHandlerBenchmark {
+
+	private OrderQueriesHandler cachingHandler;
+
+	private OrderQueriesHandler nonCachingHandler;
+
+	private FindOrderQuery findOrderQuery;
+
+	@Setup
+	public void setUp() {
+		OrderEntity orderEntity = new OrderEntity();
+		orderEntity.setOrderId(UUID.randomUUID().toString());
+		orderEntity.setOrderStatus(OrderStatus.APPROVED);
+		OrdersRepository ordersRepository = mock(OrdersRepository.class);
+		when(ordersRepository.findByOrderId(anyString())).thenReturn(orderEntity);
+
+		cachingHandler = new OrderQueriesHandler(ordersRepository,
+				new OrderSummaryCache(new SimpleMeterRegistry(), 10_000, Duration.ofMinutes(10)));
+		nonCachingHandler = new OrderQueriesHandler(ordersRepository,
+				new OrderSummaryCache(new SimpleMeterRegistry(), 0, Duration.ofMinutes(10)));
+		findOrderQuery = new FindOrderQuery(orderEntity.getOrderId());
+		cachingHandler.findOrder(findOrderQuery);
+	}
+
+	@Benchmark
+	public OrderSummary cacheHit() {
+		return cachingHandler.findOrder(findOrderQuery);
+	}
+
+	@Benchmark
+	public OrderSummary cacheMiss() {
+		return nonCachingHandler.findOrder(findOrderQuery);
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.lsoftware.estore.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.lsoftware.estore.core.data.OrderEntity;
+import com.lsoftware.estore.core.model.OrderStatus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Read-through fills of {@link OrderSummaryCache} while the segments of the projection replay one
+ * after the other.
+ */
+class OrderSummaryCacheTest {
+
+	private final OrderSummaryCache orderSummaryCache = new OrderSummaryCache(new SimpleMeterRegistry(), 100,
+			Duration.ofMinutes(10));
+
+	@Test
+	void fillsAreSkippedUntilTheLastSegmentHasGoneLive() {
+		orderSummaryCache.replayStarted(Arrays.asList(0, 1, 2));
+
+		orderSummaryCache.replayEnded(0);
+		orderSummaryCache.replayEnded(1);
+		fill("order-1");
+		assertNull(orderSummaryCache.getIfPresent("order-1"), "segment 2 is still replaying");
+
+		orderSummaryCache.replayEnded(2);
+		fill("order-1");
+		assertNotNull(orderSummaryCache.getIfPresent("order-1"));
+	}
+
+	@Test
+	void fillReadBeforeAReplayStartedIsNotCached() {
+		long fillStamp = orderSummaryCache.fillStamp();
+
+		orderSummaryCache.replayStarted(Collections.singleton(0));
+		orderSummaryCache.replayEnded(0);
+
+		orderSummaryCache.putIfAbsent(orderEntity("order-1"), fillStamp);
+		assertNull(orderSummaryCache.getIfPresent("order-1"));
+	}
+
+	@Test
+	void replayStartingDropsCachedEntries() {
+		fill("order-1");
+
+		orderSummaryCache.replayStarted(Collections.singleton(3));
+
+		assertNull(orderSummaryCache.getIfPresent("order-1"));
+		assertTrue(orderSummaryCache.fillStamp() < 0);
+	}
+
+	@Test
+	void liveBatchOfASegmentThatWasNotReplayingEndsNothing() {
+		orderSummaryCache.replayStarted(Collections.singleton(1));
+
+		orderSummaryCache.replayEnded(0);
+
+		assertEquals(-1, orderSummaryCache.fillStamp());
+	}
+
+	private void fill(String orderId) {
+		orderSummaryCache.putIfAbsent(orderEntity(orderId), orderSummaryCache.fillStamp());
+	}
+
+	private static OrderEntity orderEntity(String orderId) {
+		OrderEntity orderEntity = new OrderEntity();
+		orderEntity.setOrderId(orderId);
+		orderEntity.setOrderStatus(OrderStatus.CREATED);
+		return orderEntity;
+	}
+
+}
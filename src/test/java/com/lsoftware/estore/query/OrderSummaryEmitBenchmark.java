@@ -0,0 +1,95 @@
+package com.lsoftware.estore.query;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.messaging.responsetypes.ResponseTypes;
+import org.axonframework.monitoring.NoOpMessageMonitor;
+import org.axonframework.queryhandling.GenericSubscriptionQueryMessage;
+import org.axonframework.queryhandling.QueryUpdateEmitter;
+import org.axonframework.queryhandling.SimpleQueryUpdateEmitter;
+import org.axonframework.queryhandling.SubscriptionQueryMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lsoftware.estore.core.model.OrderStatus;
+import com.lsoftware.estore.core.model.OrderSummary;
+
+/**
+ * Cost of publishing one order's final {@link OrderSummary} while many POST /orders requests hold
+ * an open FindOrderQuery subscription. {@code keyedEmit} is what OrderSaga does now: the
+ * {@link OrderSummaryUpdateEmitter} looks the subscriptions up by orderId, and should stay flat as
+ * {@code subscriptions} grows. {@code targetedEmit} is the orderId predicate on Axon's
+ * SimpleQueryUpdateEmitter, {@code broadcastEmit} the original {@code query -> true}; both test
+ * every open subscription.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class OrderSummaryEmitBenchmark {
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int subscriptions;
+
+	private QueryUpdateEmitter queryUpdateEmitter;
+
+	private OrderSummaryUpdateEmitter orderSummaryUpdateEmitter;
+
+	private String[] orderIds;
+
+	private int next;
+
+	@Setup
+	public void setUp() {
+		queryUpdateEmitter = SimpleQueryUpdateEmitter.builder().build();
+		orderSummaryUpdateEmitter = new OrderSummaryUpdateEmitter(NoOpMessageMonitor.INSTANCE);
+		orderIds = new String[subscriptions];
+		for (int i = 0; i < subscriptions; i++) {
+			orderIds[i] = UUID.randomUUID().toString();
+			SubscriptionQueryMessage<FindOrderQuery, OrderSummary, OrderSummary> query =
+					new GenericSubscriptionQueryMessage<>(new FindOrderQuery(orderIds[i]),
+							ResponseTypes.instanceOf(OrderSummary.class),
+							ResponseTypes.instanceOf(OrderSummary.class));
+			queryUpdateEmitter.<OrderSummary>registerUpdateHandler(query, 1024).getUpdates().subscribe();
+			orderSummaryUpdateEmitter.<OrderSummary>registerUpdateHandler(query, 1024).getUpdates().subscribe();
+		}
+	}
+
+	@Benchmark
+	public void keyedEmit() {
+		String orderId = nextOrderId();
+		orderSummaryUpdateEmitter.emit(new OrderSummary(orderId, OrderStatus.APPROVED, ""));
+	}
+
+	@Benchmark
+	public void targetedEmit() {
+		String orderId = nextOrderId();
+		queryUpdateEmitter.emit(FindOrderQuery.class, query -> orderId.equals(query.getOrderId()),
+				new OrderSummary(orderId, OrderStatus.APPROVED, ""));
+	}
+
+	@Benchmark
+	public void broadcastEmit() {
+		String orderId = nextOrderId();
+		queryUpdateEmitter.emit(FindOrderQuery.class, query -> true,
+				new OrderSummary(orderId, OrderStatus.APPROVED, ""));
+	}
+
+	private String nextOrderId() {
+		next = (next + 1) % orderIds.length;
+		return orderIds[next];
+	}
+
+}
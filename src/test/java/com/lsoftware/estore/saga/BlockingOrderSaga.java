@@ -0,0 +1,129 @@
+package com.lsoftware.estore.saga;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.deadline.DeadlineManager;
+import org.axonframework.messaging.responsetypes.ResponseTypes;
+import org.axonframework.queryhandling.QueryGateway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lsoftware.estore.shared.core.commands.CancelProductReservationCommand;
+import com.lsoftware.estore.shared.core.commands.ProcessPaymentCommand;
+import com.lsoftware.estore.shared.core.events.ProductReservedEvent;
+import com.lsoftware.estore.shared.core.model.User;
+import com.lsoftware.estore.shared.core.query.FetchUserPaymentDetailsQuery;
+
+/**
+ * The ProductReservedEvent handler of {@link OrderSaga} as it was before the payment step was
+ * composed from futures, copied unchanged with what it calls: the baseline of {@link OrderSagaBenchmark}.
+ */
+class BlockingOrderSaga {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(BlockingOrderSaga.class);
+	
+	private final CommandGateway commandGateway;
+	
+	private final QueryGateway queryGateway;
+	
+	private final DeadlineManager deadlineManager;
+	
+	private final String PAYMENT_PROCESSING_TIMEOUT_DEADLINE = "payment-processing-deadline";
+	
+	private String scheduleId;
+	
+	BlockingOrderSaga(CommandGateway commandGateway, QueryGateway queryGateway, DeadlineManager deadlineManager) {
+		this.commandGateway = commandGateway;
+		this.queryGateway = queryGateway;
+		this.deadlineManager = deadlineManager;
+	}
+	
+	public void handle(ProductReservedEvent productReservedEvent) {
+		// Process user payment....
+		LOGGER.info("ProductReservedEvent handled for productId: " + productReservedEvent.getProductId() + 
+				" and orderId" + productReservedEvent.getOrderId());
+		LOGGER.info("Processing payment....");
+		
+		FetchUserPaymentDetailsQuery fetchUserPaymentDetailsQuery = 
+				new FetchUserPaymentDetailsQuery(productReservedEvent.getUserId());
+		
+		User userPaymentDetails = null;
+		
+		try {
+			userPaymentDetails = queryGateway
+					.query(fetchUserPaymentDetailsQuery, ResponseTypes.instanceOf(User.class))
+					.join();
+		} catch (Exception e) {
+			LOGGER.error(e.getMessage());
+			// Start a compensating transaction
+			cancelProductReservation(productReservedEvent, e.getMessage());
+			return;
+		}
+		
+		if (userPaymentDetails == null) {
+			// Start a compensating transaction
+			cancelProductReservation(productReservedEvent, "Could not fetch user payment details");
+			return;
+		}
+		
+		LOGGER.info("Successfully fetched user payment details for user: " + userPaymentDetails.getFirstName()); 
+	
+		
+		scheduleId = deadlineManager.schedule(Duration.of(60, ChronoUnit.SECONDS), 
+				PAYMENT_PROCESSING_TIMEOUT_DEADLINE, productReservedEvent);
+		
+		//if(true) return;
+		
+		ProcessPaymentCommand processPaymentCommand = ProcessPaymentCommand
+				.builder()
+				.orderId(productReservedEvent.getOrderId())
+				.paymentDetails(userPaymentDetails.getPaymentDetails())
+				.paymentId(UUID.randomUUID().toString())
+				.build();
+		
+		String result = null;
+		boolean compensated = false;
+		try {
+			result = commandGateway.sendAndWait(processPaymentCommand, 10, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			LOGGER.error(e.getMessage());
+			// Start a compensating transaction
+			compensated = true;
+			cancelProductReservation(productReservedEvent, e.getMessage());
+		}
+		
+		if (!compensated && result == null) {
+			LOGGER.info("The ProcessPaymentCommand resulted in NULL. Initiating a compansation transaction");
+			// Start a compensating transaction
+			cancelProductReservation(productReservedEvent, "Could not proccess user payment with provided payment");
+		}
+		
+	}
+	
+	private void cancelProductReservation(ProductReservedEvent productReservedEvent, String reason) {
+		cancelDeadline();
+		
+		CancelProductReservationCommand cancelProductReservationCommand = 
+				CancelProductReservationCommand.builder()
+				.orderId(productReservedEvent.getOrderId())
+				.productId(productReservedEvent.getProductId())
+				.quantity(productReservedEvent.getQuantity())
+				.userId(productReservedEvent.getUserId())
+				.reason(reason)
+				.build();
+	
+		commandGateway.send(cancelProductReservationCommand);
+	}
+	
+	private void cancelDeadline() {
+		if (scheduleId != null) {
+			deadlineManager.cancelSchedule(PAYMENT_PROCESSING_TIMEOUT_DEADLINE, scheduleId);
+		}
+		
+	}
+
+}
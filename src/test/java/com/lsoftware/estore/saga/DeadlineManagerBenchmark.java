@@ -0,0 +1,139 @@
+package com.lsoftware.estore.saga;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.axonframework.deadline.DeadlineManager;
+import org.axonframework.deadline.SimpleDeadlineManager;
+import org.axonframework.deadline.quartz.QuartzDeadlineManager;
+import org.axonframework.modelling.saga.SagaScopeDescriptor;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+
+import com.lsoftware.estore.shared.core.events.ProductReservedEvent;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Schedules and then cancels the payment-processing deadline of {@code deadlines} sagas, which is
+ * what every OrderSaga that completes in time does. {@code quartz} uses the JDBC job store of the
+ * application on an in-memory H2 database, {@code simple} the former in-memory
+ * {@link SimpleDeadlineManager}. The scheduler is not started, so nothing fires while measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class DeadlineManagerBenchmark {
+
+	private static final String DEADLINE_NAME = "payment-processing-deadline";
+
+	@Param({ "100000", "1000000" })
+	public int deadlines;
+
+	@Param({ "simple", "quartz" })
+	public String deadlineManagerType;
+
+	private SchedulerFactoryBean schedulerFactory;
+
+	private DeadlineManager deadlineManager;
+
+	private ProductReservedEvent productReservedEvent;
+
+	private SagaScopeDescriptor[] sagas;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		productReservedEvent = ProductReservedEvent.builder()
+				.orderId(UUID.randomUUID().toString())
+				.productId(UUID.randomUUID().toString())
+				.userId(UUID.randomUUID().toString())
+				.quantity(1)
+				.build();
+		sagas = new SagaScopeDescriptor[deadlines];
+		for (int i = 0; i < deadlines; i++) {
+			sagas[i] = new SagaScopeDescriptor(OrderSaga.class.getSimpleName(), UUID.randomUUID().toString());
+		}
+
+		if ("quartz".equals(deadlineManagerType)) {
+			deadlineManager = quartzDeadlineManager();
+		} else {
+			deadlineManager = SimpleDeadlineManager.builder()
+					.scopeAwareProvider(scopeDescriptor -> Stream.empty())
+					.build();
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Exception {
+		if (deadlineManager instanceof SimpleDeadlineManager) {
+			((SimpleDeadlineManager) deadlineManager).shutdown();
+		}
+		if (schedulerFactory != null) {
+			schedulerFactory.destroy();
+			schedulerFactory = null;
+		}
+	}
+
+	@Benchmark
+	public int scheduleAndCancel() {
+		String[] scheduleIds = new String[deadlines];
+		for (int i = 0; i < deadlines; i++) {
+			scheduleIds[i] = deadlineManager.schedule(Duration.ofSeconds(60), DEADLINE_NAME, productReservedEvent,
+					sagas[i]);
+		}
+		for (int i = 0; i < deadlines; i++) {
+			deadlineManager.cancelSchedule(DEADLINE_NAME, scheduleIds[i]);
+		}
+		return scheduleIds.length;
+	}
+
+	private DeadlineManager quartzDeadlineManager() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		new ResourceDatabasePopulator(new ClassPathResource("quartz/schema-h2.sql")).execute(dataSource);
+
+		// Same settings as spring.quartz.properties in application.properties
+		Properties quartzProperties = new Properties();
+		quartzProperties.setProperty("org.quartz.threadPool.threadCount", "10");
+		quartzProperties.setProperty("org.quartz.scheduler.batchTriggerAcquisitionMaxCount", "10");
+		quartzProperties.setProperty("org.quartz.scheduler.batchTriggerAcquisitionFireAheadTimeWindow", "1000");
+
+		schedulerFactory = new SchedulerFactoryBean();
+		schedulerFactory.setSchedulerName("deadline-benchmark-" + UUID.randomUUID());
+		schedulerFactory.setDataSource(dataSource);
+		schedulerFactory.setQuartzProperties(quartzProperties);
+		schedulerFactory.setAutoStartup(false);
+		schedulerFactory.afterPropertiesSet();
+
+		XStream xStream = new XStream();
+		xStream.allowTypesByWildcard(new String[] { "com.lsoftware.**", "org.axonframework.**" });
+		return QuartzDeadlineManager.builder()
+				.scheduler(schedulerFactory.getObject())
+				.scopeAwareProvider(scopeDescriptor -> Stream.empty())
+				.serializer(XStreamSerializer.builder().xStream(xStream).build())
+				.build();
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.lsoftware.estore.saga;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.deadline.DeadlineManager;
+import org.axonframework.messaging.responsetypes.ResponseType;
+import org.axonframework.queryhandling.QueryGateway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.lsoftware.estore.core.metrics.OrderMetrics;
+import com.lsoftware.estore.query.OrderSummaryUpdateEmitter;
+import com.lsoftware.estore.shared.core.commands.ProcessPaymentCommand;
+import com.lsoftware.estore.shared.core.events.ProductReservedEvent;
+import com.lsoftware.estore.shared.core.model.User;
+import com.lsoftware.estore.shared.core.query.FetchUserPaymentDetailsQuery;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Saga throughput on a single event processor thread while the payment service answers slowly.
+ * Each invocation handles a batch of ProductReservedEvents and returns once every payment has
+ * completed, so the score is payments per second. {@code blockingPaymentStep} runs the former
+ * join/sendAndWait handler ({@link BlockingOrderSaga}), {@code nonBlockingPaymentStep} the current
+ * {@link OrderSaga#handle(ProductReservedEvent)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class OrderSagaBenchmark {
+
+	private static final int EVENTS_PER_INVOCATION = 20;
+
+	@Param({ "10", "50" })
+	public long paymentLatencyMillis;
+
+	private Executor slowPaymentService;
+
+	// Payments started by the non-blocking saga, awaited at the end of each invocation
+	private final Queue<CompletableFuture<String>> payments = new ConcurrentLinkedQueue<>();
+
+	private OrderSaga orderSaga;
+
+	private BlockingOrderSaga blockingOrderSaga;
+
+	private ProductReservedEvent productReservedEvent;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		User user = User.builder()
+				.userId(UUID.randomUUID().toString())
+				.firstName("Benchmark")
+				.build();
+		slowPaymentService = CompletableFuture.delayedExecutor(paymentLatencyMillis, TimeUnit.MILLISECONDS);
+
+		QueryGateway queryGateway = mock(QueryGateway.class);
+		when(queryGateway.query(any(FetchUserPaymentDetailsQuery.class), any(ResponseType.class)))
+				.thenAnswer(invocation -> CompletableFuture.completedFuture(user));
+
+		CommandGateway commandGateway = mock(CommandGateway.class);
+		when(commandGateway.send(any(ProcessPaymentCommand.class))).thenAnswer(invocation -> {
+			CompletableFuture<String> payment = processPayment(invocation.getArgument(0));
+			payments.add(payment);
+			return payment;
+		});
+		when(commandGateway.sendAndWait(any(ProcessPaymentCommand.class), anyLong(), any(TimeUnit.class)))
+				.thenAnswer(invocation -> processPayment(invocation.getArgument(0)).get(10, TimeUnit.SECONDS));
+		DeadlineManager deadlineManager = mock(DeadlineManager.class);
+
+		orderSaga = new OrderSaga();
+		// No caching, so every saga still makes its own lookup
+		ReflectionTestUtils.setField(orderSaga, "userPaymentDetailsLoader",
+				new UserPaymentDetailsLoader(queryGateway, new SimpleMeterRegistry(), Duration.ZERO, 0));
+		ReflectionTestUtils.setField(orderSaga, "commandGateway", commandGateway);
+		ReflectionTestUtils.setField(orderSaga, "deadlineManager", deadlineManager);
+		ReflectionTestUtils.setField(orderSaga, "queryUpdateEmitter", mock(OrderSummaryUpdateEmitter.class));
+		ReflectionTestUtils.setField(orderSaga, "orderMetrics", new OrderMetrics(new SimpleMeterRegistry()));
+
+		blockingOrderSaga = new BlockingOrderSaga(commandGateway, queryGateway, deadlineManager);
+
+		productReservedEvent = ProductReservedEvent.builder()
+				.orderId(UUID.randomUUID().toString())
+				.productId(UUID.randomUUID().toString())
+				.userId(user.getUserId())
+				.quantity(1)
+				.build();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_PER_INVOCATION)
+	public void blockingPaymentStep() {
+		for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+			blockingOrderSaga.handle(productReservedEvent);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_PER_INVOCATION)
+	public void nonBlockingPaymentStep() {
+		for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+			orderSaga.handle(productReservedEvent);
+		}
+		awaitPayments(EVENTS_PER_INVOCATION);
+	}
+
+	private CompletableFuture<String> processPayment(ProcessPaymentCommand processPaymentCommand) {
+		return CompletableFuture.supplyAsync(processPaymentCommand::getPaymentId, slowPaymentService);
+	}
+
+	private void awaitPayments(int count) {
+		for (int i = 0; i < count; i++) {
+			CompletableFuture<String> payment;
+			while ((payment = payments.poll()) == null) {
+				Thread.onSpinWait();
+			}
+			payment.join();
+		}
+	}
+
+}
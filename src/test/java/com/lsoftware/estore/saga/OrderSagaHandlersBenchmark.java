@@ -0,0 +1,170 @@
+package com.lsoftware.estore.saga;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.deadline.DeadlineManager;
+import org.axonframework.messaging.responsetypes.ResponseType;
+import org.axonframework.monitoring.NoOpMessageMonitor;
+import org.axonframework.queryhandling.QueryGateway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.lsoftware.estore.core.events.OrderApprovedEvent;
+import com.lsoftware.estore.core.events.OrderCreatedEvent;
+import com.lsoftware.estore.core.events.OrderRejectedEvent;
+import com.lsoftware.estore.core.metrics.OrderMetrics;
+import com.lsoftware.estore.core.model.OrderStatus;
+import com.lsoftware.estore.query.OrderSummaryUpdateEmitter;
+import com.lsoftware.estore.shared.core.events.PaymentProcessedEvent;
+import com.lsoftware.estore.shared.core.events.ProductReservationCancelledEvent;
+import com.lsoftware.estore.shared.core.events.ProductReservedEvent;
+import com.lsoftware.estore.shared.core.model.User;
+import com.lsoftware.estore.shared.core.query.FetchUserPaymentDetailsQuery;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Each {@link OrderSaga} event handler on its own, with the products, users and payments services
+ * replaced by in-memory stand-ins that answer immediately. {@code happyPath} and
+ * {@code rejectionPath} run the handlers of one order in the order the saga sees the events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class OrderSagaHandlersBenchmark {
+
+	private OrderSaga orderSaga;
+
+	private OrderCreatedEvent orderCreatedEvent;
+
+	private ProductReservedEvent productReservedEvent;
+
+	private PaymentProcessedEvent paymentProcessedEvent;
+
+	private OrderApprovedEvent orderApprovedEvent;
+
+	private ProductReservationCancelledEvent productReservationCancelledEvent;
+
+	private OrderRejectedEvent orderRejectedEvent;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		User user = User.builder()
+				.userId(UUID.randomUUID().toString())
+				.firstName("Benchmark")
+				.build();
+
+		QueryGateway usersService = mock(QueryGateway.class);
+		when(usersService.query(any(FetchUserPaymentDetailsQuery.class), any(ResponseType.class)))
+				.thenAnswer(invocation -> CompletableFuture.completedFuture(user));
+
+		// Products and payments service: every command succeeds immediately
+		CommandGateway commandGateway = mock(CommandGateway.class);
+		when(commandGateway.send(any()))
+				.thenAnswer(invocation -> CompletableFuture.completedFuture(UUID.randomUUID().toString()));
+
+		DeadlineManager deadlineManager = mock(DeadlineManager.class);
+		when(deadlineManager.schedule(any(Duration.class), anyString(), any()))
+				.thenReturn(UUID.randomUUID().toString());
+
+		orderSaga = new OrderSaga();
+		// No caching, so every saga still makes its own lookup
+		ReflectionTestUtils.setField(orderSaga, "userPaymentDetailsLoader",
+				new UserPaymentDetailsLoader(usersService, new SimpleMeterRegistry(), Duration.ZERO, 0));
+		ReflectionTestUtils.setField(orderSaga, "commandGateway", commandGateway);
+		ReflectionTestUtils.setField(orderSaga, "deadlineManager", deadlineManager);
+		ReflectionTestUtils.setField(orderSaga, "queryUpdateEmitter", new OrderSummaryUpdateEmitter(NoOpMessageMonitor.INSTANCE));
+		ReflectionTestUtils.setField(orderSaga, "orderMetrics", new OrderMetrics(new SimpleMeterRegistry()));
+
+		String orderId = UUID.randomUUID().toString();
+		String productId = UUID.randomUUID().toString();
+		orderCreatedEvent = new OrderCreatedEvent(orderId, productId, user.getUserId(), 1,
+				UUID.randomUUID().toString(), OrderStatus.CREATED);
+		productReservedEvent = ProductReservedEvent.builder()
+				.orderId(orderId)
+				.productId(productId)
+				.userId(user.getUserId())
+				.quantity(1)
+				.build();
+		paymentProcessedEvent = new PaymentProcessedEvent(orderId, UUID.randomUUID().toString());
+		orderApprovedEvent = new OrderApprovedEvent(orderId);
+		productReservationCancelledEvent = ProductReservationCancelledEvent.builder()
+				.orderId(orderId)
+				.productId(productId)
+				.userId(user.getUserId())
+				.quantity(1)
+				.reason("Payment timeout")
+				.build();
+		orderRejectedEvent = new OrderRejectedEvent(orderId, "Payment timeout");
+	}
+
+	@Benchmark
+	public void orderCreated() {
+		orderSaga.handle(orderCreatedEvent, Instant.now());
+	}
+
+	@Benchmark
+	public void productReserved() {
+		orderSaga.handle(productReservedEvent);
+	}
+
+	@Benchmark
+	public void paymentProcessed() {
+		orderSaga.handle(paymentProcessedEvent);
+	}
+
+	@Benchmark
+	public void orderApproved() {
+		orderSaga.handle(orderApprovedEvent);
+	}
+
+	@Benchmark
+	public void productReservationCancelled() {
+		orderSaga.handle(productReservationCancelledEvent);
+	}
+
+	@Benchmark
+	public void orderRejected() {
+		orderSaga.handle(orderRejectedEvent);
+	}
+
+	@Benchmark
+	public void happyPath() {
+		orderSaga.handle(orderCreatedEvent, Instant.now());
+		orderSaga.handle(productReservedEvent);
+		orderSaga.handle(paymentProcessedEvent);
+		orderSaga.handle(orderApprovedEvent);
+	}
+
+	@Benchmark
+	public void rejectionPath() {
+		orderSaga.handle(orderCreatedEvent, Instant.now());
+		orderSaga.handle(productReservedEvent);
+		orderSaga.handle(productReservationCancelledEvent);
+		orderSaga.handle(orderRejectedEvent);
+	}
+
+}
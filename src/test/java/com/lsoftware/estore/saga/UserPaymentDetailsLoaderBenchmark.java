@@ -0,0 +1,118 @@
+package com.lsoftware.estore.saga;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.axonframework.messaging.responsetypes.ResponseType;
+import org.axonframework.messaging.responsetypes.ResponseTypes;
+import org.axonframework.queryhandling.QueryGateway;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lsoftware.estore.shared.core.model.User;
+import com.lsoftware.estore.shared.core.query.FetchUserPaymentDetailsQuery;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * A flash sale: {@value #LOOKUPS} sagas look up payment details at once, spread over {@code users}
+ * users, against a users service answering in 5 ms. {@code direct} sends a query per saga as
+ * OrderSaga used to, {@code loader} goes through {@link UserPaymentDetailsLoader} (without its
+ * cache, so only coalescing counts). The {@code queries} counter shows the round trips made.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class UserPaymentDetailsLoaderBenchmark {
+
+	private static final int LOOKUPS = 1000;
+
+	@Param({ "10", "1000" })
+	public int users;
+
+	private String[] userIds;
+
+	private QueryGateway usersService;
+
+	private UserPaymentDetailsLoader loader;
+
+	private final AtomicLong queriesSent = new AtomicLong();
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class RoundTrips {
+
+		public long queries;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			queries = 0;
+		}
+	}
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		userIds = new String[users];
+		for (int i = 0; i < users; i++) {
+			userIds[i] = UUID.randomUUID().toString();
+		}
+		Executor slowUsersService = CompletableFuture.delayedExecutor(5, TimeUnit.MILLISECONDS);
+		usersService = mock(QueryGateway.class);
+		when(usersService.query(any(FetchUserPaymentDetailsQuery.class), any(ResponseType.class)))
+				.thenAnswer(invocation -> {
+					queriesSent.incrementAndGet();
+					String userId = ((FetchUserPaymentDetailsQuery) invocation.getArgument(0)).getUserId();
+					return CompletableFuture.supplyAsync(() -> User.builder().userId(userId).build(), slowUsersService);
+				});
+		loader = new UserPaymentDetailsLoader(usersService, new SimpleMeterRegistry(), Duration.ZERO, 0);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void direct(RoundTrips roundTrips) {
+		lookUp(roundTrips, userId -> usersService.query(new FetchUserPaymentDetailsQuery(userId),
+				ResponseTypes.instanceOf(User.class)));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void loader(RoundTrips roundTrips) {
+		lookUp(roundTrips, loader::load);
+	}
+
+	private void lookUp(RoundTrips roundTrips, Function<String, CompletableFuture<User>> lookup) {
+		long before = queriesSent.get();
+		CompletableFuture<?>[] lookups = new CompletableFuture<?>[LOOKUPS];
+		for (int i = 0; i < LOOKUPS; i++) {
+			lookups[i] = lookup.apply(userIds[i % users]);
+		}
+		CompletableFuture.allOf(lookups).join();
+		roundTrips.queries += queriesSent.get() - before;
+	}
+
+}